@@ -0,0 +1,132 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import com.vuzix.sdk.barcode.ScanResult2;
+
+/**
+ * Check digit validation for symbologies that carry one in their payload
+ *
+ * A result that passes is trusted from a single frame, so only symbologies whose check digit
+ * actually protects the payload are listed here. QR codes are protected by error correction inside
+ * the engine and are left to the consensus vote.
+ */
+final class BarcodeChecksum {
+
+    private BarcodeChecksum() {
+    }
+
+    /**
+     * Determines if the payload of a result has a valid check digit
+     *
+     * @param result ScanResult2 to check
+     * @return True if the symbology carries a check digit and it validates
+     */
+    static boolean isValid(ScanResult2 result) {
+        if (result.getFormat() == null) {
+            return false;
+        }
+        String text = result.getText();
+        switch (result.getFormat().name()) {
+            case "UPC_A":
+                return text.length() == 12 && isValidGtin(text);
+            case "EAN_13":
+                return text.length() == 13 && isValidGtin(text);
+            case "EAN_8":
+                return text.length() == 8 && isValidGtin(text);
+            case "UPC_E":
+                return text.length() == 8 && isValidGtin(expandUpcE(text));
+            case "CODE_128":
+                // The mandatory modulo 103 symbol check character is verified by the engine before
+                // a result is returned, and is not part of the payload.
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Validates the GS1 modulo 10 check digit used by UPC, EAN and GTIN-14 payloads
+     *
+     * @param digits String of digits, with the check digit last
+     * @return True if all characters are digits and the check digit is correct
+     */
+    static boolean isValidGtin(String digits) {
+        if (digits == null || digits.length() < 2) {
+            return false;
+        }
+        int sum = 0;
+        int last = digits.length() - 1;
+        for (int i = last - 1; i >= 0; i--) {
+            int digit = digits.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            // Weights alternate 3, 1, 3, ... starting next to the check digit
+            sum += ((last - i) % 2 == 1) ? digit * 3 : digit;
+        }
+        int check = digits.charAt(last) - '0';
+        return check >= 0 && check <= 9 && (10 - sum % 10) % 10 == check;
+    }
+
+    /**
+     * Expands an 8 digit UPC-E payload to the equivalent 12 digit UPC-A payload
+     *
+     * @param upcE String number system, six data digits and check digit
+     * @return String UPC-A equivalent, with the same check digit
+     */
+    static String expandUpcE(String upcE) {
+        char[] data = upcE.toCharArray();
+        StringBuilder upcA = new StringBuilder(12);
+        upcA.append(data[0]);
+        char last = data[6];
+        switch (last) {
+            case '0':
+            case '1':
+            case '2':
+                upcA.append(data, 1, 2).append(last).append("0000").append(data, 3, 3);
+                break;
+            case '3':
+                upcA.append(data, 1, 3).append("00000").append(data, 4, 2);
+                break;
+            case '4':
+                upcA.append(data, 1, 4).append("00000").append(data[5]);
+                break;
+            default:
+                upcA.append(data, 1, 5).append("0000").append(last);
+                break;
+        }
+        upcA.append(data[7]);
+        return upcA.toString();
+    }
+}
@@ -0,0 +1,218 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import android.graphics.Point;
+
+import com.vuzix.sdk.barcode.ScanResult2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Accumulates barcode candidates across consecutive scan results before accepting one.
+ *
+ * Accepting the first result of the first frame means a single misread costs the user a full
+ * rescan. Instead, every result of every frame casts a vote for its payload, weighted by where and
+ * how large the barcode outline is in the frame. A payload is accepted as soon as its votes within
+ * the last N frames reach K. Symbologies that carry a check digit are accepted from a single frame
+ * once that check digit validates, since a misread would almost certainly fail the check.
+ */
+public class ConsensusVoter {
+
+    public static final float DEFAULT_REQUIRED_VOTES = 2.0f;
+    public static final int DEFAULT_WINDOW_FRAMES = 5;
+
+    // A barcode right in the center of the frame gets a full vote. One in the corner gets this much
+    private static final float MIN_WEIGHT = 0.5f;
+    // Outlines spanning less than this fraction of the frame are likely partial or distant reads
+    private static final float MIN_EXTENT = 0.1f;
+
+    private final float requiredVotes;
+    private final ArrayList<HashMap<String, Float>> frameVotes;
+    private final HashMap<String, Float> totalVotes = new HashMap<>();
+    private int nextFrame;
+
+    /**
+     * Creates a voter with the default agreement of {@value #DEFAULT_REQUIRED_VOTES} votes within
+     * {@value #DEFAULT_WINDOW_FRAMES} frames
+     */
+    public ConsensusVoter() {
+        this(DEFAULT_REQUIRED_VOTES, DEFAULT_WINDOW_FRAMES);
+    }
+
+    /**
+     * Creates a voter with a custom K-of-N agreement
+     *
+     * @param requiredVotes float K. The summed vote weight a payload needs before it is accepted
+     * @param windowFrames int N. The number of most recent frames whose votes are counted
+     */
+    public ConsensusVoter(float requiredVotes, int windowFrames) {
+        if (windowFrames < 1) {
+            throw new IllegalArgumentException("windowFrames must be at least 1");
+        }
+        this.requiredVotes = requiredVotes;
+        frameVotes = new ArrayList<>(windowFrames);
+        for (int i = 0; i < windowFrames; i++) {
+            frameVotes.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Discards all votes. Call this whenever a new scan begins
+     */
+    public void reset() {
+        for (HashMap<String, Float> votes : frameVotes) {
+            votes.clear();
+        }
+        totalVotes.clear();
+        nextFrame = 0;
+    }
+
+    /**
+     * Adds the results of one frame to the vote
+     *
+     * @param results array of ScanResult2 found in the frame
+     * @param frameWidth int width of the frame the results were found in, or 0 if unknown
+     * @param frameHeight int height of the frame the results were found in, or 0 if unknown
+     * @return The accepted ScanResult2, or null if no payload has enough agreement yet
+     */
+    public ScanResult2 vote(ScanResult2[] results, int frameWidth, int frameHeight) {
+        // Recycle the oldest frame in the window, removing its votes from the totals
+        HashMap<String, Float> frame = frameVotes.get(nextFrame);
+        nextFrame = (nextFrame + 1) % frameVotes.size();
+        for (Map.Entry<String, Float> entry : frame.entrySet()) {
+            Float total = totalVotes.get(entry.getKey());
+            float remaining = (total == null ? 0 : total) - entry.getValue();
+            if (remaining > 0.001f) {
+                totalVotes.put(entry.getKey(), remaining);
+            } else {
+                totalVotes.remove(entry.getKey());
+            }
+        }
+        frame.clear();
+
+        if (results == null) {
+            return null;
+        }
+
+        for (ScanResult2 result : results) {
+            String text = result.getText();
+            if (text == null || text.isEmpty()) {
+                continue;
+            }
+            if (BarcodeChecksum.isValid(result)) {
+                reset();
+                return result;
+            }
+            // A payload seen in several places of one frame still only votes once for that frame
+            float weight = geometryWeight(result.getResultPoints(), frameWidth, frameHeight);
+            Float previous = frame.get(text);
+            if (previous == null || previous < weight) {
+                frame.put(text, weight);
+            }
+        }
+
+        // Only payloads voted for in this frame can have newly reached agreement
+        ScanResult2 accepted = null;
+        float acceptedVotes = 0;
+        for (Map.Entry<String, Float> entry : frame.entrySet()) {
+            Float total = totalVotes.get(entry.getKey());
+            float votes = (total == null ? 0 : total) + entry.getValue();
+            totalVotes.put(entry.getKey(), votes);
+            if (votes >= requiredVotes && votes > acceptedVotes) {
+                accepted = findResult(results, entry.getKey());
+                acceptedVotes = votes;
+            }
+        }
+        if (accepted != null) {
+            reset();
+        }
+        return accepted;
+    }
+
+    /**
+     * Utility to find the result with the given payload
+     *
+     * @param results array of ScanResult2 to search
+     * @param text String payload to find
+     * @return The first ScanResult2 with that payload
+     */
+    private static ScanResult2 findResult(ScanResult2[] results, String text) {
+        for (ScanResult2 result : results) {
+            if (text.equals(result.getText())) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determines how much a single detection should count. The user aims the glasses at the
+     * barcode they want, so outlines near the center of the frame and of a reasonable size are
+     * trusted more than small ones at the edge.
+     *
+     * @param points Point[] outline of the barcode, as given by ScanResult2.getResultPoints()
+     * @param frameWidth int width of the frame, or 0 if unknown
+     * @param frameHeight int height of the frame, or 0 if unknown
+     * @return float weight between MIN_WEIGHT and 1
+     */
+    static float geometryWeight(Point[] points, int frameWidth, int frameHeight) {
+        if (points == null || points.length < 2 || frameWidth <= 0 || frameHeight <= 0) {
+            return MIN_WEIGHT;
+        }
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (Point point : points) {
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+        // Distance of the outline center from the frame center, 0 at the center and 1 at a corner
+        float dx = ((minX + maxX) / 2f - frameWidth / 2f) / (frameWidth / 2f);
+        float dy = ((minY + maxY) / 2f - frameHeight / 2f) / (frameHeight / 2f);
+        float offset = Math.min(1f, (float)Math.sqrt((dx * dx + dy * dy) / 2));
+
+        float weight = 1f - (1f - MIN_WEIGHT) * offset;
+        // 1D barcodes only report a line, so use the larger of the two extents
+        float extent = Math.max((float)(maxX - minX) / frameWidth, (float)(maxY - minY) / frameHeight);
+        if (extent < MIN_EXTENT) {
+            weight *= extent / MIN_EXTENT;
+        }
+        return Math.max(MIN_WEIGHT, weight);
+    }
+}
@@ -0,0 +1,155 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import android.app.Fragment;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * A fragment to flip back through the scan history
+ */
+public class HistoryFragment extends Fragment {
+
+    /**
+     * Inflate the correct layout upon creation
+     *
+     * @param inflater The LayoutInflater object that can be used to inflate any views in the fragment,
+     * @param container If non-null, this is the parent view that the fragment's UI should be attached to.
+     * @param savedInstanceState  If non-null, this fragment is being re-constructed from a previous saved state as given here.
+     * @return - Returns the View for the fragment's UI, or null.
+     */
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
+        return inflater.inflate(R.layout.fragment_history, container, false);
+    }
+
+    /**
+     * Once our view is created, we will fill the list with the scan history
+     *
+     * @param view - The new view
+     * @param savedInstanceState - required argument that we ignore
+     */
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        ListView list = (ListView)view.findViewById(R.id.history_list);
+        list.setAdapter(new HistoryAdapter(ScanHistory.getInstance(getContext())));
+    }
+
+    /**
+     * Holds the views of one row, so they are only looked up when the row is created
+     */
+    private static class RowViews {
+        ScanResultImageView thumbnail;
+        TextView text;
+        ScanHistory.Item item;
+    }
+
+    /**
+     * Adapter showing one scan per row. Rows are recycled as the list scrolls, and thumbnails are
+     * decoded from the disk cache on a worker thread when they are not already in memory.
+     */
+    private static class HistoryAdapter extends BaseAdapter {
+        private final ScanHistory history;
+
+        HistoryAdapter(ScanHistory history) {
+            this.history = history;
+        }
+
+        @Override
+        public int getCount() {
+            return history.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return history.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return history.get(position).id;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            RowViews row;
+            if (convertView == null) {
+                convertView = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_history, parent, false);
+                row = new RowViews();
+                row.thumbnail = (ScanResultImageView)convertView.findViewById(R.id.history_thumbnail);
+                row.text = (TextView)convertView.findViewById(R.id.history_text);
+                convertView.setTag(row);
+            } else {
+                row = (RowViews)convertView.getTag();
+            }
+
+            ScanHistory.Item item = history.get(position);
+            row.item = item;
+            row.text.setText(item.format != null ? item.text + "\n" + item.format : item.text);
+            Bitmap thumbnail = history.getCachedThumbnail(item);
+            if (thumbnail != null) {
+                showThumbnail(row, thumbnail);
+            } else {
+                row.thumbnail.setImageBitmap(null);
+                row.thumbnail.setLocation(null);
+                history.loadThumbnail(item, (loadedItem, loaded) -> {
+                    // The row may have been recycled for another scan while the thumbnail loaded
+                    if (row.item == loadedItem && loaded != null) {
+                        showThumbnail(row, loaded);
+                    }
+                });
+            }
+            return convertView;
+        }
+
+        /**
+         * Utility to show a thumbnail along with the location of its barcode
+         */
+        private static void showThumbnail(RowViews row, Bitmap thumbnail) {
+            row.thumbnail.setImageBitmap(thumbnail);
+            row.thumbnail.setLocation(row.item.location);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Point;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.vuzix.sdk.barcode.ScanResult2;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A transparent view drawn over the live preview that outlines and labels every barcode found in
+ * the most recent frame.
+ *
+ * This is updated for every frame, so nothing is allocated once the view is created. The thread
+ * delivering scan results writes into a spare set of buffers and publishes it with a single atomic
+ * swap. The UI thread swaps in the newest buffers when it draws. Neither side ever waits on a lock,
+ * and a frame being drawn is never written to.
+ */
+public class LiveOverlayView extends View {
+
+    private static final int MAX_CODES = 16;
+    private static final int MAX_POINTS = 4;
+    private static final int MAX_LABEL_LENGTH = 32;
+    // Outlines are removed if no new frame arrives within this time
+    private static final long STALE_MS = 300;
+
+    private final Paint outlinePaint;
+    private final Paint labelPaint;
+    private final Path outlinePath = new Path();
+
+    // The writer fills its buffers, then exchanges them with the published ones
+    private final AtomicReference<Buffers> publishedBuffers = new AtomicReference<>(new Buffers());
+    private Buffers writeBuffers = new Buffers();   // Only touched by the writing thread
+    private Buffers drawBuffers = new Buffers();    // Only touched by the UI thread
+
+    /**
+     * The outlines and labels of one frame, in frame coordinates
+     */
+    private static class Buffers {
+        final float[] points = new float[MAX_CODES * MAX_POINTS * 2];
+        final int[] pointCounts = new int[MAX_CODES];
+        final char[][] labels = new char[MAX_CODES][MAX_LABEL_LENGTH];
+        final int[] labelLengths = new int[MAX_CODES];
+        int codeCount;
+        int frameWidth;
+        int frameHeight;
+        long timeMillis;
+        volatile boolean fresh;
+    }
+
+    public LiveOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public LiveOverlayView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    /**
+     * The constructor taking all available parameters. Called directly, or by other constructors
+     *
+     * @param context The Context in which we are operating
+     * @param attrs - The AttributeSet or null
+     * @param defStyleAttr The int style, or zero
+     */
+    public LiveOverlayView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        outlinePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        outlinePaint.setColor(Color.GREEN);
+        outlinePaint.setStrokeWidth(5);
+        outlinePaint.setStyle(Paint.Style.STROKE);
+        outlinePaint.setStrokeJoin(Paint.Join.ROUND);
+
+        labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        labelPaint.setColor(Color.GREEN);
+        labelPaint.setTextSize(24);
+    }
+
+    /**
+     * Replaces the outlines with those of a new frame. May be called from any thread
+     *
+     * @param results array of ScanResult2 found in the frame, or null if there were none
+     * @param frameWidth int width of the frame the results were found in
+     * @param frameHeight int height of the frame the results were found in
+     */
+    public void update(ScanResult2[] results, int frameWidth, int frameHeight) {
+        Buffers buffers = writeBuffers;
+        int codeCount = 0;
+        if (results != null) {
+            for (int i = 0; i < results.length && codeCount < MAX_CODES; i++) {
+                Point[] points = results[i].getResultPoints();
+                String text = results[i].getText();
+                if (points == null || points.length < 2 || text == null) {
+                    continue;
+                }
+                int pointCount = Math.min(points.length, MAX_POINTS);
+                int offset = codeCount * MAX_POINTS * 2;
+                for (int p = 0; p < pointCount; p++) {
+                    buffers.points[offset + p * 2] = points[p].x;
+                    buffers.points[offset + p * 2 + 1] = points[p].y;
+                }
+                buffers.pointCounts[codeCount] = pointCount;
+                int labelLength = Math.min(text.length(), MAX_LABEL_LENGTH);
+                text.getChars(0, labelLength, buffers.labels[codeCount], 0);
+                buffers.labelLengths[codeCount] = labelLength;
+                codeCount++;
+            }
+        }
+        buffers.codeCount = codeCount;
+        buffers.frameWidth = frameWidth;
+        buffers.frameHeight = frameHeight;
+        buffers.timeMillis = SystemClock.uptimeMillis();
+        buffers.fresh = true;
+        writeBuffers = publishedBuffers.getAndSet(buffers);
+        postInvalidateOnAnimation();
+    }
+
+    /**
+     * Removes all outlines. May be called from any thread
+     */
+    public void clear() {
+        update(null, 0, 0);
+    }
+
+    /**
+     * Draws the outline and label of each barcode in the newest frame
+     *
+     * @param canvas Canvas upon which to draw
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        if (publishedBuffers.get().fresh) {
+            drawBuffers.fresh = false;
+            drawBuffers = publishedBuffers.getAndSet(drawBuffers);
+        }
+        Buffers buffers = drawBuffers;
+        long age = SystemClock.uptimeMillis() - buffers.timeMillis;
+        if (buffers.codeCount == 0 || buffers.frameWidth <= 0 || age >= STALE_MS) {
+            return;
+        }
+
+        // The preview fills the width of the screen, as in ScanResultImageView
+        float scale = (float)getWidth() / buffers.frameWidth;
+        for (int i = 0; i < buffers.codeCount; i++) {
+            int offset = i * MAX_POINTS * 2;
+            outlinePath.rewind();
+            outlinePath.moveTo(buffers.points[offset] * scale, buffers.points[offset + 1] * scale);
+            for (int p = 1; p < buffers.pointCounts[i]; p++) {
+                outlinePath.lineTo(buffers.points[offset + p * 2] * scale, buffers.points[offset + p * 2 + 1] * scale);
+            }
+            outlinePath.close();
+            canvas.drawPath(outlinePath, outlinePaint);
+            canvas.drawText(buffers.labels[i], 0, buffers.labelLengths[i],
+                    buffers.points[offset] * scale, buffers.points[offset + 1] * scale - outlinePaint.getStrokeWidth(), labelPaint);
+        }
+        // Redraw once these outlines become stale, so they disappear if no new frame arrives
+        postInvalidateDelayed(STALE_MS - age);
+    }
+}
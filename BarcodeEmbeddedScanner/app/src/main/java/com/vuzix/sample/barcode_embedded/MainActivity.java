@@ -34,38 +34,71 @@ package com.vuzix.sample.barcode_embedded;
 
 import android.app.Activity;
 import android.app.Fragment;
+import android.content.Context;
 import android.content.pm.ActivityInfo;
-import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
-import android.media.AudioManager;
-import android.media.MediaPlayer;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.KeyEvent;
 import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
 import android.widget.Toast;
 
-import com.vuzix.sdk.barcode.BarcodeType2;
 import com.vuzix.sdk.barcode.ScanResult2;
 import com.vuzix.sdk.barcode.ScannerFragment;
 
-
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The main activity for the Vuzix M-Series barcode sample application
  */
 public class MainActivity extends Activity implements PermissionsFragment.Listener {
 
+    private static final String TAG = "BarcodeEmbedded";
     private static final String TAG_PERMISSIONS_FRAGMENT = "permissions";
 
-    // Limiting the barcode formats to those you expect to encounter improves the speed of scanning
-    // and increases the likelihood of properly detecting a barcode.
-    private final String[] barcodeTypes = {
-            BarcodeType2.QR_CODE.name(),
-            BarcodeType2.CODE_128.name()
-    };
+    // Continuous mode keeps the scanner and camera running, and lists each result over the preview
+    // rather than replacing the scanner with a result screen. This suits scanning many items in a row.
+    private static final boolean CONTINUOUS_MODE = false;
+    // Only the newest results are listed, so a long session doesn't grow the list without bound
+    private static final int MAX_CONTINUOUS_RESULTS = 50;
+    // Vibrate along with the beep, for noisy environments
+    private static final boolean HAPTIC_FEEDBACK = false;
+    // Check each scan against the codes expected for this pick or receiving session. The list is
+    // read from this file in the app's external files directory, one code per line
+    private static final boolean PICK_LIST = false;
+    private static final String PICK_LIST_FILE = "picklist.txt";
 
     private View scanInstructionsView;
+    private ListView scanResultsList;
+    private LiveOverlayView liveOverlayView;
+    private final List<String> scanResults = new ArrayList<>();  // Shown by scanResultsAdapter, newest first
+    private ArrayAdapter<String> scanResultsAdapter;
+    private String lastScanText;
+    private long lastScanTime;
     private ScannerFragment.Listener2 mScannerListener;
+    private ScanFeedback mScanFeedback;
+
+    // Require agreement across frames before accepting a result, so a single misread does not
+    // force the user to rescan
+    private ConsensusVoter mConsensusVoter;
+
+    // The formats, zoom, duplicate timeout and voting come from the active scan profile. The scanner
+    // is shown again when the profiles file changes, so the new settings apply without a rebuild
+    private ScanProfiles.Profile mScanProfile;
+    private final ScanProfiles.Listener mProfilesListener = profiles -> {
+        if (getFragmentManager().findFragmentById(R.id.fragment_container) instanceof ScannerFragment) {
+            showScanner();
+        }
+    };
+
+    // Kept for the life of the process, so codes already picked are remembered if the activity is recreated
+    private static volatile PickListVerifier pickListVerifier;
 
     /**
      * One-time initialization. Sets up the view and the permissions.
@@ -89,7 +122,20 @@ public class MainActivity extends Activity implements PermissionsFragment.Listen
         // Register as a PermissionsFragment.Listener so our permissionsGranted() is called
         permissionsFragment.setListener(this);
 
+        mScanFeedback = new ScanFeedback(this, HAPTIC_FEEDBACK);
+        ProductCatalog.getInstance(this);   // Starts importing or opening the catalog now, rather than on the first scan
+        mScanProfile = ScanProfiles.current(this).getActive();
+        mConsensusVoter = new ConsensusVoter(mScanProfile.votes, mScanProfile.window);
+        ScanProfiles.addListener(mProfilesListener);
+        if (PICK_LIST && pickListVerifier == null) {
+            loadPickList(new File(getExternalFilesDir(null), PICK_LIST_FILE));
+        }
+
         scanInstructionsView = findViewById(R.id.scan_instructions);
+        scanResultsList = findViewById(R.id.scan_results_list);
+        liveOverlayView = findViewById(R.id.live_overlay);
+        scanResultsAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, scanResults);
+        scanResultsList.setAdapter(scanResultsAdapter);
 
         createScannerListener();
 
@@ -104,6 +150,16 @@ public class MainActivity extends Activity implements PermissionsFragment.Listen
         }
     }
 
+    /**
+     * Releases the feedback sounds
+     */
+    @Override
+    protected void onDestroy() {
+        ScanProfiles.removeListener(mProfilesListener);
+        mScanFeedback.release();
+        super.onDestroy();
+    }
+
     /**
      * Called upon permissions being granted. This is the only way we show the scanner with API 23
      */
@@ -114,8 +170,10 @@ public class MainActivity extends Activity implements PermissionsFragment.Listen
 
     private Bundle setScannerArgs() {
         Bundle args = new Bundle();
-        args.putStringArray(ScannerFragment.ARG_BARCODE2_TYPES, barcodeTypes);
-        args.putBoolean(ScannerFragment.ARG_ZOOM_IN_MODE, true);
+        // Limiting the barcode formats to those you expect to encounter improves the speed of scanning
+        // and increases the likelihood of properly detecting a barcode.
+        args.putStringArray(ScannerFragment.ARG_BARCODE2_TYPES, mScanProfile.getFormatNames());
+        args.putBoolean(ScannerFragment.ARG_ZOOM_IN_MODE, mScanProfile.zoom);
         return args;
     }
 
@@ -123,11 +181,20 @@ public class MainActivity extends Activity implements PermissionsFragment.Listen
      * Shows the scanner fragment in our activity
      */
     private void showScanner() {
+        mScanProfile = ScanProfiles.current(this).getActive();
         ScannerFragment scannerFragment = new ScannerFragment();
         scannerFragment.setArguments(setScannerArgs());
+        mConsensusVoter = new ConsensusVoter(mScanProfile.votes, mScanProfile.window);
         getFragmentManager().beginTransaction().replace(R.id.fragment_container, scannerFragment).commit();
         scannerFragment.setListener2(mScannerListener);                 // Required to get scan results
         scanInstructionsView.setVisibility(View.VISIBLE);  // Put the instructions back on the screen
+        if (scanResultsAdapter.getCount() > 0) {
+            scanResultsList.setVisibility(View.VISIBLE);  // Put the continuous mode results back too
+        }
+        if (CONTINUOUS_MODE) {
+            liveOverlayView.clear();
+            liveOverlayView.setVisibility(View.VISIBLE);
+        }
     }
 
     private void createScannerListener() {
@@ -155,15 +222,29 @@ public class MainActivity extends Activity implements PermissionsFragment.Listen
     /**
      * This callback gives us the scan result.  This is relayed through mScannerListener.onScanResult
      *
-     * This sample calls a helper class to display the result to the screen
+     * The results of each frame are voted on, and scanning continues until enough frames agree.
+     * This sample then calls a helper class to display the result to the screen
      *
      * @param bitmap -  the bitmap in which barcodes were found
      * @param results -  an array of ScanResult
      */
     private void onScanFragmentScanResult(Bitmap bitmap, ScanResult2[] results) {
+        int width = (bitmap != null) ? bitmap.getWidth() : 0;
+        int height = (bitmap != null) ? bitmap.getHeight() : 0;
+        if (CONTINUOUS_MODE) {
+            liveOverlayView.update(results, width, height);  // Outline every barcode in view
+        }
+        ScanResult2 acceptedResult = mConsensusVoter.vote(results, width, height);
+        if (acceptedResult == null) {
+            return;  // Keep scanning until the frames agree
+        }
+        if (CONTINUOUS_MODE) {
+            addContinuousScanResult(bitmap, acceptedResult);
+            return;
+        }
         ScannerFragment scannerFragment = (ScannerFragment)getFragmentManager().findFragmentById(R.id.fragment_container);
         scannerFragment.setListener2(null);
-        showScanResult(bitmap, results[0]);
+        showScanResult(bitmap, acceptedResult);
     }
 
     /**
@@ -185,40 +266,165 @@ public class MainActivity extends Activity implements PermissionsFragment.Listen
      */
     private void showScanResult(Bitmap bitmap, ScanResult2 result) {
         scanInstructionsView.setVisibility(View.GONE);
+        liveOverlayView.setVisibility(View.GONE);
         ScanResultFragment scanResultFragment = new ScanResultFragment();
         Bundle args = new Bundle();
-        args.putParcelable(ScanResultFragment.ARG_BITMAP, bitmap);
+        // Only a key to the bitmap goes into the arguments. Parceling the full frame is slow and can
+        // exceed the transaction limit when the activity state is saved
+        args.putInt(ScanResultFragment.ARG_BITMAP_KEY, ScanImageStore.getInstance().put(bitmap));
         args.putParcelable(ScanResultFragment.ARG_SCAN_RESULT, result);
+        PickListVerifier.Result pick = verifyPick(result.getText());
+        if (pick != null) {
+            args.putString(ScanResultFragment.ARG_PICK_RESULT, pick.name());
+        }
         scanResultFragment.setArguments(args);
         getFragmentManager().beginTransaction().replace(R.id.fragment_container, scanResultFragment).commit();
-        beep();
+        ScanHistory.getInstance(this).add(bitmap, result);
+        feedback(pick);
+    }
+
+    /**
+     * Helper method to list a scan result in continuous mode. The scanner fragment stays in place,
+     * so the camera is not closed and re-opened between items.
+     *
+     * @param bitmap -  the bitmap in which the barcode was found
+     * @param result -  the accepted ScanResult
+     */
+    private void addContinuousScanResult(Bitmap bitmap, ScanResult2 result) {
+        long now = SystemClock.elapsedRealtime();
+        boolean duplicate = result.getText().equals(lastScanText) && (now - lastScanTime < mScanProfile.dedupMillis);
+        lastScanText = result.getText();
+        lastScanTime = now;
+        if (duplicate) {
+            return;  // Still looking at the barcode we just reported
+        }
+        PickListVerifier.Result pick = verifyPick(result.getText());
+        if (scanResults.size() >= MAX_CONTINUOUS_RESULTS) {
+            scanResults.remove(scanResults.size() - 1);  // By position, since the same text can be listed twice
+        }
+        scanResults.add(0, describePick(this, describeProduct(this, result.getText()), pick));  // Newest on top
+        scanResultsAdapter.notifyDataSetChanged();
+        ScanHistory.getInstance(this).add(bitmap, result);
+        scanResultsList.setVisibility(View.VISIBLE);
+        feedback(pick);
+    }
+
+    /**
+     * Helper method to read the pick list on a worker thread. Scans are not checked until it is loaded
+     *
+     * @param manifest File listing the expected codes
+     */
+    private static void loadPickList(File manifest) {
+        new Thread(() -> {
+            try {
+                long start = SystemClock.elapsedRealtime();
+                PickListVerifier verifier = PickListVerifier.load(manifest);
+                pickListVerifier = verifier;
+                Log.i(TAG, "Loaded " + verifier.getCount() + " pick list codes in " + (SystemClock.elapsedRealtime() - start) + "ms");
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to read pick list " + manifest, e);
+            }
+        }, "PickListLoader").start();
+    }
+
+    /**
+     * Helper method to check a scan against the pick list
+     *
+     * @param text String text of the barcode
+     * @return PickListVerifier.Result of the check, or null if there is no pick list
+     */
+    private static PickListVerifier.Result verifyPick(String text) {
+        PickListVerifier verifier = pickListVerifier;
+        return (verifier != null) ? verifier.verify(text) : null;
+    }
+
+    /**
+     * Utility to mark a barcode description with the result of the pick list check
+     *
+     * @param context Context used to find the strings
+     * @param description String describing the barcode
+     * @param pick PickListVerifier.Result of the check, or null if there is no pick list
+     * @return String describing the barcode and any problem with it
+     */
+    static String describePick(Context context, String description, PickListVerifier.Result pick) {
+        if (pick == PickListVerifier.Result.UNEXPECTED) {
+            return context.getString(R.string.pick_unexpected, description);
+        } else if (pick == PickListVerifier.Result.DUPLICATE) {
+            return context.getString(R.string.pick_duplicate, description);
+        }
+        return description;
+    }
+
+    /**
+     * Helper method to give the error sound for a wrong or repeated item, and the usual beep otherwise
+     *
+     * @param pick PickListVerifier.Result of the check, or null if there is no pick list
+     */
+    private void feedback(PickListVerifier.Result pick) {
+        if (pick == null || pick == PickListVerifier.Result.EXPECTED) {
+            beep();
+        } else {
+            mScanFeedback.failure();
+        }
+    }
+
+    /**
+     * Utility to describe a barcode with its product, if the product catalog has it
+     *
+     * @param context Context used to find the catalog and strings
+     * @param text String text of the barcode
+     * @return String describing the barcode
+     */
+    static String describeProduct(Context context, String text) {
+        ProductCatalog.Product product = ProductCatalog.getInstance(context).lookup(text);
+        if (product == null) {
+            return text;
+        }
+        return context.getString(R.string.product_description, text, product.name, product.location);
     }
 
     /**
      * A best practice is to give some audible feedback during scan operations. This beeps.
+     *
+     * The sound is loaded once in onCreate(), so this returns immediately even when scanning
+     * several barcodes per second.
      */
     private void beep() {
-        MediaPlayer player = new MediaPlayer();
-        player.setAudioStreamType(AudioManager.STREAM_MUSIC);
-        player.setOnCompletionListener(MediaPlayer::release);
-        try {
-            AssetFileDescriptor file = getResources().openRawResourceFd(R.raw.beep);
-            player.setDataSource(file.getFileDescriptor(), file.getStartOffset(), file.getLength());
-            file.close();
-            player.setVolume(.1f, .1f);
-            player.prepare();
-            player.start();
-        } catch (IOException e) {
-            player.release();
+        mScanFeedback.success();
+    }
+
+    /**
+     * Helper method to show the scan history in place of the scanner
+     */
+    private void showHistory() {
+        scanInstructionsView.setVisibility(View.GONE);
+        scanResultsList.setVisibility(View.GONE);
+        liveOverlayView.setVisibility(View.GONE);
+        getFragmentManager().beginTransaction().replace(R.id.fragment_container, new HistoryFragment()).commit();
+    }
+
+    /**
+     * Handles the menu button to show the scan history
+     *
+     * @param keyCode The keycode that is released
+     * @param event The key event
+     * @return True if handled, false otherwise
+     */
+    @Override
+    public boolean onKeyUp(int keyCode, KeyEvent event) {
+        if (keyCode == KeyEvent.KEYCODE_MENU && !isHistoryShowing()) {
+            showHistory();
+            return true;
         }
+        return super.onKeyUp(keyCode, event);
     }
 
     /**
-     * Basic control to return from the result fragment to the scanner fragment, or exit the app from the scanner
+     * Basic control to return from the result or history fragment to the scanner fragment, or exit the app from the scanner
      */
     @Override
     public void onBackPressed() {
-        if (isScanResultShowing()) {
+        if (isScanResultShowing() || isHistoryShowing()) {
             showScanner();
             return;
         }
@@ -232,4 +438,12 @@ public class MainActivity extends Activity implements PermissionsFragment.Listen
     private boolean isScanResultShowing() {
         return getFragmentManager().findFragmentById(R.id.fragment_container) instanceof ScanResultFragment;
     }
+
+    /**
+     * Utility to determine if the scan history fragment is showing
+     * @return True if showing
+     */
+    private boolean isHistoryShowing() {
+        return getFragmentManager().findFragmentById(R.id.fragment_container) instanceof HistoryFragment;
+    }
 }
@@ -0,0 +1,421 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Looks up the product for a barcode in a catalog file, without loading the catalog into memory.
+ *
+ * The catalog file is memory-mapped, and searched with a binary search over a sorted index. A
+ * lookup touches a couple of dozen pages even for millions of products, so it takes microseconds
+ * and only the pages touched are resident.
+ *
+ * The file is built from a CSV file of barcode, name and location, which is imported whenever
+ * catalog.csv in the app's external files directory is newer than the catalog. Push one with adb.
+ *
+ * File layout, big-endian:
+ *   header: int MAGIC, int VERSION, int count, int reserved
+ *   index:  count entries of a long holding the first 8 bytes of the barcode, zero padded, and an
+ *           int offset of the product's record. Sorted by barcode
+ *   records: the barcode, name and location, each as a short length and UTF-8 bytes
+ * The first 8 bytes of the barcode in the index settle most comparisons without reading a record.
+ */
+final class ProductCatalog {
+
+    private static final String TAG = "ProductCatalog";
+    private static final String CATALOG_FILE = "catalog.bin";
+    private static final String CSV_FILE = "catalog.csv";
+    private static final int MAGIC = 0x4341544C;   // "CATL"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 12;
+    private static final int PREFIX_BYTES = 8;
+
+    private static ProductCatalog sInstance;
+
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private volatile MappedByteBuffer catalog;
+    private volatile int count;
+
+    /**
+     * A product found in the catalog
+     */
+    static class Product {
+        final String name;
+        final String location;
+
+        Product(String name, String location) {
+            this.name = name;
+            this.location = location;
+        }
+    }
+
+    private ProductCatalog(Context context) {
+        File catalogFile = new File(context.getFilesDir(), CATALOG_FILE);
+        File externalDir = context.getExternalFilesDir(null);
+        File csvFile = (externalDir != null) ? new File(externalDir, CSV_FILE) : null;
+        loadExecutor.execute(() -> {
+            try {
+                if (csvFile != null && csvFile.isFile() && csvFile.lastModified() > catalogFile.lastModified()) {
+                    long start = System.currentTimeMillis();
+                    int imported = build(csvFile, catalogFile);
+                    Log.i(TAG, "Imported " + imported + " products in " + (System.currentTimeMillis() - start) + "ms");
+                }
+                if (catalogFile.isFile()) {
+                    open(catalogFile);
+                    Log.i(TAG, "Opened catalog of " + count + " products");
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to load the product catalog", e);
+            }
+        });
+    }
+
+    /**
+     * @param context Context used to find the catalog
+     * @return The catalog shared by the whole process
+     */
+    static synchronized ProductCatalog getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProductCatalog(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Finds the product with a barcode. Safe to call from any thread
+     *
+     * @param barcode String text of the barcode
+     * @return Product found, or null if there is none or the catalog is not loaded yet
+     */
+    Product lookup(String barcode) {
+        MappedByteBuffer catalog = this.catalog;
+        if (catalog == null) {
+            return null;
+        }
+        byte[] key = barcode.getBytes(StandardCharsets.UTF_8);
+        long prefix = prefixOf(key, key.length);
+        int low = 0;
+        int high = count - 1;
+        // Only absolute gets, so lookups on several threads do not disturb each other
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int entry = HEADER_BYTES + middle * ENTRY_BYTES;
+            int compare = Long.compareUnsigned(catalog.getLong(entry), prefix);
+            int record = catalog.getInt(entry + PREFIX_BYTES);
+            if (compare == 0) {
+                compare = compareKey(catalog, record, key);
+            }
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                int nameOffset = record + 2 + (catalog.getShort(record) & 0xFFFF);
+                int locationOffset = nameOffset + 2 + (catalog.getShort(nameOffset) & 0xFFFF);
+                return new Product(readString(catalog, nameOffset), readString(catalog, locationOffset));
+            }
+        }
+        return null;
+    }
+
+    private void open(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer mapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            if (mapped.limit() < HEADER_BYTES || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION
+                    || mapped.limit() < HEADER_BYTES + (long) mapped.getInt(8) * ENTRY_BYTES) {
+                throw new IOException("Not a product catalog: " + file);
+            }
+            count = mapped.getInt(8);
+            catalog = mapped;
+        }
+    }
+
+    /**
+     * Helper method to compare the barcode of a record with a key, as unsigned bytes
+     */
+    private static int compareKey(ByteBuffer catalog, int record, byte[] key) {
+        int length = catalog.getShort(record) & 0xFFFF;
+        int common = Math.min(length, key.length);
+        for (int i = PREFIX_BYTES; i < common; i++) {   // The prefix is already known to match
+            int difference = (catalog.get(record + 2 + i) & 0xFF) - (key[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static String readString(ByteBuffer catalog, int offset) {
+        byte[] bytes = new byte[catalog.getShort(offset) & 0xFFFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = catalog.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Helper method to pack the first 8 bytes of a barcode into a long, so that comparing the longs
+     * unsigned orders them as the bytes would be
+     */
+    private static long prefixOf(byte[] key, int length) {
+        long prefix = 0;
+        for (int i = 0; i < PREFIX_BYTES; i++) {
+            prefix = (prefix << 8) | ((i < length) ? (key[i] & 0xFF) : 0);
+        }
+        return prefix;
+    }
+
+    /**
+     * Builds a catalog file from a CSV file of barcode, name and location. A first line starting with
+     * "barcode" is taken as a header. Fields may be quoted. If a barcode appears more than once, the
+     * last line wins.
+     *
+     * The records are written to disk as they are read, so only 12 bytes per product are held in
+     * memory while building.
+     *
+     * @param csvFile File to import
+     * @param catalogFile File to replace with the catalog, once it is complete
+     * @return int number of products in the catalog
+     * @throws IOException if either file cannot be read or written
+     */
+    static int build(File csvFile, File catalogFile) throws IOException {
+        File recordsFile = new File(catalogFile.getPath() + ".records");
+        long[] prefixes = new long[1024];
+        int[] offsets = new int[1024];
+        int rows = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(csvFile), StandardCharsets.UTF_8));
+             DataOutputStream records = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(recordsFile)))) {
+            String line;
+            boolean first = true;
+            List<String> fields = new ArrayList<>();
+            while ((line = in.readLine()) != null) {
+                parseCsvLine(line, fields);
+                if (first && !fields.isEmpty() && fields.get(0).equalsIgnoreCase("barcode")) {
+                    first = false;
+                    continue;
+                }
+                first = false;
+                if (fields.isEmpty() || fields.get(0).isEmpty()) {
+                    continue;
+                }
+                if (rows == prefixes.length) {
+                    prefixes = Arrays.copyOf(prefixes, rows * 2);
+                    offsets = Arrays.copyOf(offsets, rows * 2);
+                }
+                byte[] key = truncate(fields.get(0).getBytes(StandardCharsets.UTF_8));
+                prefixes[rows] = prefixOf(key, key.length);
+                offsets[rows] = records.size();
+                rows++;
+                writeString(records, key);
+                writeString(records, truncate(((fields.size() > 1) ? fields.get(1) : "").getBytes(StandardCharsets.UTF_8)));
+                writeString(records, truncate(((fields.size() > 2) ? fields.get(2) : "").getBytes(StandardCharsets.UTF_8)));
+                if (records.size() == Integer.MAX_VALUE) {
+                    throw new IOException("Catalog is too large");   // The counter stops at 2GB
+                }
+            }
+        }
+
+        try (RandomAccessFile recordsIn = new RandomAccessFile(recordsFile, "r")) {
+            ByteBuffer recordData = recordsIn.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, recordsIn.length());
+            sort(prefixes, offsets, 0, rows - 1, recordData);
+
+            // Drop all but the last of each run of equal barcodes. Records were written in CSV order
+            int count = 0;
+            for (int i = 0; i < rows; i++) {
+                if (count > 0 && prefixes[count - 1] == prefixes[i] && compareRecords(recordData, offsets[count - 1], offsets[i]) == 0) {
+                    offsets[count - 1] = Math.max(offsets[count - 1], offsets[i]);
+                } else {
+                    prefixes[count] = prefixes[i];
+                    offsets[count] = offsets[i];
+                    count++;
+                }
+            }
+
+            long recordsStart = HEADER_BYTES + (long) count * ENTRY_BYTES;
+            if (recordsStart + recordsIn.length() > Integer.MAX_VALUE) {
+                throw new IOException("Catalog is too large");
+            }
+            File temporary = new File(catalogFile.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeInt(0);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(prefixes[i]);
+                    out.writeInt((int) (recordsStart + offsets[i]));
+                }
+                recordData.rewind();
+                byte[] buffer = new byte[64 * 1024];
+                while (recordData.hasRemaining()) {
+                    int length = Math.min(buffer.length, recordData.remaining());
+                    recordData.get(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                }
+            }
+            if (!temporary.renameTo(catalogFile)) {
+                throw new IOException("Unable to replace " + catalogFile);
+            }
+            return count;
+        } finally {
+            recordsFile.delete();
+        }
+    }
+
+    /**
+     * Helper method to sort the index by barcode. A quicksort, since the arrays are parallel
+     */
+    private static void sort(long[] prefixes, int[] offsets, int low, int high, ByteBuffer records) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            // Median of three, so sorted input is not the worst case
+            if (compare(prefixes, offsets, middle, low, records) < 0) swap(prefixes, offsets, middle, low);
+            if (compare(prefixes, offsets, high, low, records) < 0) swap(prefixes, offsets, high, low);
+            if (compare(prefixes, offsets, high, middle, records) < 0) swap(prefixes, offsets, high, middle);
+            swap(prefixes, offsets, middle, high - 1);
+            int pivot = high - 1;
+            int i = low;
+            int j = high - 1;
+            while (true) {
+                while (compare(prefixes, offsets, ++i, pivot, records) < 0) { }
+                while (compare(prefixes, offsets, --j, pivot, records) > 0) { }
+                if (i >= j) {
+                    break;
+                }
+                swap(prefixes, offsets, i, j);
+            }
+            swap(prefixes, offsets, i, high - 1);
+            // Recurse into the smaller side, loop on the larger, so the stack stays shallow
+            if (i - low < high - i) {
+                sort(prefixes, offsets, low, i - 1, records);
+                low = i + 1;
+            } else {
+                sort(prefixes, offsets, i + 1, high, records);
+                high = i - 1;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && compare(prefixes, offsets, j, j - 1, records) < 0; j--) {
+                swap(prefixes, offsets, j, j - 1);
+            }
+        }
+    }
+
+    private static int compare(long[] prefixes, int[] offsets, int a, int b, ByteBuffer records) {
+        int compare = Long.compareUnsigned(prefixes[a], prefixes[b]);
+        return (compare != 0) ? compare : compareRecords(records, offsets[a], offsets[b]);
+    }
+
+    private static int compareRecords(ByteBuffer records, int a, int b) {
+        int lengthA = records.getShort(a) & 0xFFFF;
+        int lengthB = records.getShort(b) & 0xFFFF;
+        int common = Math.min(lengthA, lengthB);
+        for (int i = 0; i < common; i++) {
+            int difference = (records.get(a + 2 + i) & 0xFF) - (records.get(b + 2 + i) & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return lengthA - lengthB;
+    }
+
+    private static void swap(long[] prefixes, int[] offsets, int a, int b) {
+        long prefix = prefixes[a];
+        prefixes[a] = prefixes[b];
+        prefixes[b] = prefix;
+        int offset = offsets[a];
+        offsets[a] = offsets[b];
+        offsets[b] = offset;
+    }
+
+    private static byte[] truncate(byte[] bytes) {
+        return (bytes.length > 0xFFFF) ? Arrays.copyOf(bytes, 0xFFFF) : bytes;
+    }
+
+    private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Helper method to split a CSV line into fields. Quoted fields may hold commas and doubled quotes
+     */
+    private static void parseCsvLine(String line, List<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+    }
+}
@@ -0,0 +1,155 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.SoundPool;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+/**
+ * Gives audible, and optionally haptic, feedback for scan results.
+ *
+ * The sounds are decoded into a SoundPool once, when this is created. Playing one is then a
+ * non-blocking call that is safe from any thread, so feedback keeps up with several scans per second
+ * without blocking the UI thread the way preparing a MediaPlayer for every scan does.
+ *
+ * The time the play and vibrate calls take to return is logged, as that is how long each scan is held
+ * up by its feedback. It is not the time until the beep is heard. SoundPool gives no timestamps, and
+ * the device's audio output latency comes on top of it.
+ */
+class ScanFeedback {
+
+    private static final String TAG = "ScanFeedback";
+    private static final float VOLUME = .1f;
+    // Failure uses the same sound, played at half speed so it is lower and longer
+    private static final float SUCCESS_RATE = 1.0f;
+    private static final float FAILURE_RATE = 0.5f;
+    private static final long SUCCESS_VIBRATE_MS = 30;
+    private static final long FAILURE_VIBRATE_MS = 150;
+    // How many beeps to measure before logging the call time
+    private static final int CALL_TIME_LOG_INTERVAL = 50;
+
+    private final SoundPool soundPool;
+    private final int beepSoundId;
+    private volatile boolean loaded;
+    private final Vibrator vibrator;
+
+    private final Object callTimeLock = new Object();
+    private long callTimeTotalNanos;
+    private long callTimeMaxNanos;
+    private int callTimeCount;
+
+    /**
+     * Loads the sounds. They are ready to play shortly afterwards
+     *
+     * @param context Context used to load the sounds
+     * @param haptics True to also vibrate with each sound
+     */
+    ScanFeedback(Context context, boolean haptics) {
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                .build();
+        soundPool = new SoundPool.Builder()
+                .setMaxStreams(2)   // Allows a beep to start while the previous one is still playing
+                .setAudioAttributes(attributes)
+                .build();
+        soundPool.setOnLoadCompleteListener((pool, sampleId, status) -> loaded = (status == 0));
+        beepSoundId = soundPool.load(context, R.raw.beep, 1);
+        vibrator = haptics ? context.getSystemService(Vibrator.class) : null;
+    }
+
+    /**
+     * Gives feedback for a successful scan. May be called from any thread
+     */
+    void success() {
+        play(SUCCESS_RATE, SUCCESS_VIBRATE_MS);
+    }
+
+    /**
+     * Gives feedback for a failed or rejected scan. May be called from any thread
+     */
+    void failure() {
+        play(FAILURE_RATE, FAILURE_VIBRATE_MS);
+    }
+
+    /**
+     * Releases the sounds. No further feedback is given afterwards
+     */
+    void release() {
+        loaded = false;
+        soundPool.release();
+    }
+
+    /**
+     * Utility to start the sound and vibration, and measure the time taken to start them. Until the
+     * sound has loaded there is no beep, and nothing is measured
+     */
+    private void play(float rate, long vibrateMillis) {
+        boolean beep = loaded;
+        long start = SystemClock.elapsedRealtimeNanos();
+        if (beep) {
+            soundPool.play(beepSoundId, VOLUME, VOLUME, 1, 0, rate);
+        }
+        if (vibrator != null) {
+            vibrator.vibrate(VibrationEffect.createOneShot(vibrateMillis, VibrationEffect.DEFAULT_AMPLITUDE));
+        }
+        if (beep) {
+            recordCallTime(SystemClock.elapsedRealtimeNanos() - start);
+        }
+    }
+
+    /**
+     * Keeps track of the time the feedback calls take to return, and logs the average and maximum
+     * periodically
+     *
+     * @param nanos long time taken by the calls for one beep
+     */
+    private void recordCallTime(long nanos) {
+        synchronized (callTimeLock) {
+            callTimeTotalNanos += nanos;
+            callTimeMaxNanos = Math.max(callTimeMaxNanos, nanos);
+            if (++callTimeCount == CALL_TIME_LOG_INTERVAL) {
+                Log.d(TAG, "Feedback call time: average " + (callTimeTotalNanos / callTimeCount / 1000)
+                        + "us, max " + (callTimeMaxNanos / 1000) + "us over " + callTimeCount + " beeps");
+                callTimeTotalNanos = 0;
+                callTimeMaxNanos = 0;
+                callTimeCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.vuzix.sdk.barcode.ScanResult2;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the most recent scans so the user can flip back through them.
+ *
+ * Each scan keeps its text, symbology and location, along with a small thumbnail of the image.
+ * Thumbnails are written to a disk cache as compact JPEG files, and only the most recently viewed
+ * ones are kept decoded in memory, so hundreds of scans fit in a few megabytes of memory.
+ */
+final class ScanHistory {
+
+    private static final String TAG = "ScanHistory";
+    private static final int MAX_ITEMS = 500;
+    private static final int THUMBNAIL_WIDTH = 320;
+    private static final int THUMBNAIL_QUALITY = 80;
+    private static final int MAX_MEMORY_BYTES = 4 * 1024 * 1024;
+
+    private static ScanHistory sInstance;
+
+    private final File thumbnailDir;
+    private final List<Item> items = new ArrayList<>();
+    private long nextId = 1;
+    private final ExecutorService thumbnailExecutor = Executors.newSingleThreadExecutor();
+    private final Handler uiThreadHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Long, Bitmap> thumbnails = new LruCache<Long, Bitmap>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(Long id, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    };
+
+    /**
+     * A single scan in the history. The location is relative to the thumbnail
+     */
+    static class Item {
+        final long id;
+        final long timeMillis;
+        final String text;
+        final String format;
+        final Point[] location;
+
+        Item(long id, String text, String format, Point[] location) {
+            this.id = id;
+            this.timeMillis = System.currentTimeMillis();
+            this.text = text;
+            this.format = format;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Define the interface notified when a thumbnail is ready
+     */
+    interface ThumbnailCallback {
+        /**
+         * Called on the UI thread
+         *
+         * @param item Item the thumbnail belongs to
+         * @param thumbnail Bitmap of the thumbnail, or null if it could not be loaded
+         */
+        void onThumbnail(Item item, Bitmap thumbnail);
+    }
+
+    private ScanHistory(Context context) {
+        thumbnailDir = new File(context.getCacheDir(), "scan_history");
+        thumbnailExecutor.execute(() -> {
+            // The history lives as long as the process, so thumbnails of an earlier run are stale
+            File[] stale = thumbnailDir.listFiles();
+            if (stale != null) {
+                for (File file : stale) {
+                    file.delete();
+                }
+            }
+            thumbnailDir.mkdirs();
+        });
+    }
+
+    /**
+     * @param context Context used to find the cache directory
+     * @return The history shared by the whole process
+     */
+    static synchronized ScanHistory getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ScanHistory(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Adds a scan to the history. The thumbnail is created and written on a worker thread
+     *
+     * @param bitmap Bitmap in which the barcode was found, or null. It must not be modified or recycled afterwards
+     * @param result ScanResult2 of the barcode
+     */
+    void add(Bitmap bitmap, ScanResult2 result) {
+        float scale = (bitmap != null) ? Math.min(1f, (float)THUMBNAIL_WIDTH / bitmap.getWidth()) : 1f;
+        Point[] location = null;
+        Point[] points = result.getResultPoints();
+        if (points != null) {
+            location = new Point[points.length];
+            for (int i = 0; i < points.length; i++) {
+                location[i] = new Point(Math.round(points[i].x * scale), Math.round(points[i].y * scale));
+            }
+        }
+        String format = (result.getFormat() != null) ? result.getFormat().name() : null;
+
+        final Item item;
+        final Item removed;
+        synchronized (this) {
+            item = new Item(nextId++, result.getText(), format, location);
+            items.add(0, item);  // Newest first
+            removed = (items.size() > MAX_ITEMS) ? items.remove(items.size() - 1) : null;
+        }
+
+        thumbnailExecutor.execute(() -> {
+            if (removed != null) {
+                thumbnails.remove(removed.id);
+                thumbnailFile(removed).delete();
+            }
+            if (bitmap != null) {
+                int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+                int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+                Bitmap thumbnail = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                thumbnails.put(item.id, thumbnail);
+                try (FileOutputStream out = new FileOutputStream(thumbnailFile(item))) {
+                    thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to write thumbnail " + item.id, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return int number of scans in the history
+     */
+    synchronized int size() {
+        return items.size();
+    }
+
+    /**
+     * @param position int position in the history, 0 being the newest scan
+     * @return Item at that position
+     */
+    synchronized Item get(int position) {
+        return items.get(position);
+    }
+
+    /**
+     * Gets the thumbnail of a scan, if it is already in memory
+     *
+     * @param item Item of the scan
+     * @return Bitmap of the thumbnail, or null if it must be loaded with loadThumbnail()
+     */
+    Bitmap getCachedThumbnail(Item item) {
+        return thumbnails.get(item.id);
+    }
+
+    /**
+     * Loads the thumbnail of a scan from the disk cache on a worker thread
+     *
+     * @param item Item of the scan
+     * @param callback ThumbnailCallback to receive the thumbnail on the UI thread
+     */
+    void loadThumbnail(Item item, ThumbnailCallback callback) {
+        thumbnailExecutor.execute(() -> {
+            Bitmap thumbnail = thumbnails.get(item.id);
+            if (thumbnail == null) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.RGB_565;  // Half the memory of ARGB_8888
+                thumbnail = BitmapFactory.decodeFile(thumbnailFile(item).getPath(), options);
+                if (thumbnail != null) {
+                    thumbnails.put(item.id, thumbnail);
+                }
+            }
+            final Bitmap loaded = thumbnail;
+            uiThreadHandler.post(() -> callback.onThumbnail(item, loaded));
+        });
+    }
+
+    /**
+     * Utility to name the disk cache file of a thumbnail
+     */
+    private File thumbnailFile(Item item) {
+        return new File(thumbnailDir, item.id + ".jpg");
+    }
+}
@@ -0,0 +1,179 @@
+/***************************************************************************************
+Copyright (c) 2018, Vuzix Corporation
+        All rights reserved.
+
+        Redistribution and use in source and binary forms, with or without
+        modification, are permitted provided that the following conditions
+        are met:
+
+        *  Redistributions of source code must retain the above copyright
+        notice, this list of conditions and the following disclaimer.
+
+        *  Redistributions in binary form must reproduce the above copyright
+        notice, this list of conditions and the following disclaimer in the
+        documentation and/or other materials provided with the distribution.
+
+        *  Neither the name of Vuzix Corporation nor the names of
+        its contributors may be used to endorse or promote products derived
+        from this software without specific prior written permission.
+
+        THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+        AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+        THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+        PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+        CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+        EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+        PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+        OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+        WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+        OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+        EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+**************************************************************************************/
+
+package com.vuzix.sample.barcode_embedded;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process store for scan images, so fragments can be handed a small integer key rather than
+ * a Bitmap parceled into their arguments Bundle.
+ *
+ * A parceled Bitmap is copied whenever the arguments are, and a full resolution camera frame is
+ * large enough to fail with TransactionTooLargeException when the activity state is saved. The
+ * store keeps images within a fixed byte budget, evicting the least recently used ones first.
+ *
+ * A frame larger than the whole budget would be evicted as soon as it was added, so it is held
+ * outside the budget until its display variant replaces it, or it is removed.
+ */
+final class ScanImageStore {
+
+    // Enough for a few full resolution frames. Display variants are much smaller
+    private static final int MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final ScanImageStore sInstance = new ScanImageStore();
+
+    private final AtomicInteger nextKey = new AtomicInteger(1);
+    private final ExecutorService scaleExecutor = Executors.newSingleThreadExecutor();
+    private final Handler uiThreadHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Integer, Entry> images = new LruCache<Integer, Entry>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(Integer key, Entry entry) {
+            return entry.bitmap.getAllocationByteCount();
+        }
+    };
+    private final Map<Integer, Entry> oversized = new ConcurrentHashMap<>();
+
+    /**
+     * A stored image, and the scale from the original frame to this bitmap
+     */
+    private static class Entry {
+        final Bitmap bitmap;
+        final float scale;
+
+        Entry(Bitmap bitmap, float scale) {
+            this.bitmap = bitmap;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * Define the interface notified when a display image is ready
+     */
+    interface Callback {
+        /**
+         * Called on the UI thread
+         *
+         * @param bitmap Bitmap to display, or null if the image is no longer in the store
+         * @param scale float by which coordinates in the original frame must be multiplied to match
+         *              the returned bitmap
+         */
+        void onDisplayBitmap(Bitmap bitmap, float scale);
+    }
+
+    private ScanImageStore() {
+    }
+
+    /**
+     * @return The store shared by the whole process
+     */
+    static ScanImageStore getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Adds an image to the store
+     *
+     * @param bitmap Bitmap to store, or null. It must not be modified or recycled afterwards
+     * @return int key identifying the image. Null bitmaps are not stored and get key 0
+     */
+    int put(Bitmap bitmap) {
+        if (bitmap == null) {
+            return 0;
+        }
+        int key = nextKey.getAndIncrement();
+        Entry entry = new Entry(bitmap, 1f);
+        if (bitmap.getAllocationByteCount() > MAX_BYTES) {
+            oversized.put(key, entry);
+        } else {
+            images.put(key, entry);
+        }
+        return key;
+    }
+
+    /**
+     * Removes an image from the store, once nothing will show it again
+     *
+     * @param key int key returned by put()
+     */
+    void remove(int key) {
+        images.remove(key);
+        oversized.remove(key);
+    }
+
+    /**
+     * Gets a variant of the image no larger than the given size. The image is scaled on a worker
+     * thread, and the scaled variant replaces the original in the store so the full resolution
+     * frame can be freed.
+     *
+     * @param key int key returned by put()
+     * @param maxWidth int maximum width of the returned bitmap
+     * @param maxHeight int maximum height of the returned bitmap
+     * @param callback Callback to receive the bitmap on the UI thread
+     */
+    void getDisplayBitmap(int key, int maxWidth, int maxHeight, Callback callback) {
+        scaleExecutor.execute(() -> {
+            Entry entry = images.get(key);
+            if (entry == null) {
+                entry = oversized.get(key);
+            }
+            if (entry != null) {
+                Bitmap bitmap = entry.bitmap;
+                float fit = Math.min((float)maxWidth / bitmap.getWidth(), (float)maxHeight / bitmap.getHeight());
+                if (fit < 1f) {
+                    int width = Math.max(1, Math.round(bitmap.getWidth() * fit));
+                    int height = Math.max(1, Math.round(bitmap.getHeight() * fit));
+                    entry = new Entry(Bitmap.createScaledBitmap(bitmap, width, height, true), entry.scale * fit);
+                    images.put(key, entry);
+                    oversized.remove(key);
+                }
+            }
+            final Entry result = entry;
+            uiThreadHandler.post(() -> {
+                if (result != null) {
+                    callback.onDisplayBitmap(result.bitmap, result.scale);
+                } else {
+                    callback.onDisplayBitmap(null, 1f);
+                }
+            });
+        });
+    }
+}
@@ -32,8 +32,9 @@
 package com.vuzix.sample.barcode_embedded;
 
 import android.app.Fragment;
-import android.graphics.Bitmap;
+import android.graphics.Point;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -46,8 +47,9 @@ import com.vuzix.sdk.barcode.ScanResult2;
  */
 public class ScanResultFragment extends Fragment {
 
-    public static final String ARG_BITMAP = "bitmap";
+    public static final String ARG_BITMAP_KEY = "bitmap_key";
     public static final String ARG_SCAN_RESULT = "scan_result";
+    public static final String ARG_PICK_RESULT = "pick_result";
 
     /**
      * Inflate the correct layout upon creation
@@ -74,14 +76,57 @@ public class ScanResultFragment extends Fragment {
     public void onViewCreated(View view, Bundle savedInstanceState) {
         ScanResultImageView bitmap = (ScanResultImageView)view.findViewById(R.id.bitmap);
         TextView text = (TextView)view.findViewById(R.id.text);
-        // The arguments Bundle gives us the bitmap that was taken upon recognition of a barcode, and
-        // the text extracted from the barcode within the image
+        // The arguments Bundle gives us the key of the bitmap that was taken upon recognition of a
+        // barcode, and the text extracted from the barcode within the image
         Bundle args = getArguments();
         if (args != null) {
             ScanResult2 scanResult = args.getParcelable(ARG_SCAN_RESULT);
-            bitmap.setImageBitmap((Bitmap)args.getParcelable(ARG_BITMAP));
-            bitmap.setLocation(scanResult.getResultPoints());
-            text.setText(scanResult.getText());
+            String description = MainActivity.describeProduct(getActivity(), scanResult.getText());
+            String pick = args.getString(ARG_PICK_RESULT);
+            if (pick != null) {
+                description = MainActivity.describePick(getActivity(), description, PickListVerifier.Result.valueOf(pick));
+            }
+            text.setText(description);
+            // The full resolution image is scaled down to the screen size on a worker thread
+            DisplayMetrics metrics = getResources().getDisplayMetrics();
+            ScanImageStore.getInstance().getDisplayBitmap(args.getInt(ARG_BITMAP_KEY), metrics.widthPixels, metrics.heightPixels,
+                    (displayBitmap, scale) -> {
+                        if (displayBitmap != null && getView() == view) {
+                            bitmap.setImageBitmap(displayBitmap);
+                            bitmap.setLocation(scalePoints(scanResult.getResultPoints(), scale));
+                        }
+                    });
         }
     }
+
+    /**
+     * Removes the image from the store, unless the fragment is only being recreated, such as for a
+     * configuration change, and will show it again
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        Bundle args = getArguments();
+        if (args != null && (getActivity() == null || !getActivity().isChangingConfigurations())) {
+            ScanImageStore.getInstance().remove(args.getInt(ARG_BITMAP_KEY));
+        }
+    }
+
+    /**
+     * Utility to convert the barcode location from the original image to the scaled image
+     *
+     * @param points Point[] location within the original image
+     * @param scale float by which to scale each point
+     * @return Point[] location within the scaled image
+     */
+    private static Point[] scalePoints(Point[] points, float scale) {
+        if (points == null) {
+            return null;
+        }
+        Point[] scaled = new Point[points.length];
+        for (int i = 0; i < points.length; i++) {
+            scaled[i] = new Point(Math.round(points[i].x * scale), Math.round(points[i].y * scale));
+        }
+        return scaled;
+    }
 }
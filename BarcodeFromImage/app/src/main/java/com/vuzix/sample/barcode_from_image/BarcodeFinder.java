@@ -33,7 +33,6 @@
 package com.vuzix.sample.barcode_from_image;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.media.Image;
 import android.media.ImageReader;
@@ -46,9 +45,12 @@ import com.vuzix.sdk.barcode.Scanner2;
 import com.vuzix.sdk.barcode.Scanner2Factory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Utility class to find barcodes in images.
@@ -60,11 +62,19 @@ import java.nio.ByteBuffer;
  */
 
 class BarcodeFinder {
+    // Sharpness is measured on every Nth pixel of every Nth row
+    private final static int SHARPNESS_STEP = 4;
+    // Try the pure Java Code 128 decoder before the barcode engine when looking for one barcode
+    private final static boolean CODE_128_FAST_PATH = true;
+    // The last frame scanned is saved here, for debugging and replay. See LumaFrameFile
+    private final static File LATEST_FRAME_FILE = new File("/sdcard/DCIM/latest.luma");
+    private final static boolean COMPRESS_SAVED_FRAMES = true;
     private Scanner2 mScanner=null;
-    private final BarcodeType2[] barcodeTypes = {
-            BarcodeType2.QR_CODE,
-            BarcodeType2.CODE_128
-    };
+    private byte[] mImageData;
+    private final Context mContext;
+    // The formats and region to scan come from the active scan profile, and change with it
+    private ScanProfiles.Profile mProfile;
+    private final Code128ScanlineDecoder mFastDecoder = CODE_128_FAST_PATH ? new Code128ScanlineDecoder() : null;
 
     /**
      * Initialize the scan engine
@@ -73,53 +83,58 @@ class BarcodeFinder {
      */
     public BarcodeFinder(Context iContext) {
 
+        mContext = iContext.getApplicationContext();
+        mProfile = ScanProfiles.current(mContext).getActive();
         //Call into the SDK to create a scanner instance.
         try {
             mScanner = Scanner2Factory.getScanner(iContext);
-            mScanner.setFormats(barcodeTypes);
+            mScanner.setFormats(mProfile.getFormats());
         }catch (Exception ex){
         }
     }
 
+    /**
+     * Helper method to switch to the active scan profile if it changed since the last scan. Called on
+     * the scanning thread, so the formats never change during a scan
+     */
+    private void applyProfile() {
+        ScanProfiles.Profile profile = ScanProfiles.current(mContext).getActive();
+        if (profile != mProfile) {
+            mProfile = profile;
+            mScanner.setFormats(profile.getFormats());
+            Log.d(MainActivity.LOG_TAG, "Scanning with profile " + profile.name);
+        }
+    }
+
     boolean saveBusy;
-    synchronized private void saveBitmap(final Image image, final File file) {
+    synchronized private void saveFrame(final Image image, final File file) {
         if(saveBusy) {
-            Log.d(MainActivity.LOG_TAG, "Not saving bitmap... prior request in-progress");
+            Log.d(MainActivity.LOG_TAG, "Not saving frame... prior request in-progress");
             return;
         }
         saveBusy = true;
 
-        ByteBuffer buffer = image.getPlanes()[0].getBuffer(); // Y component is all we need
+        Image.Plane plane = image.getPlanes()[0]; // Y component is all we need
+        ByteBuffer buffer = plane.getBuffer();
         buffer.rewind();
         final byte[] data = new byte[buffer.remaining()];
         buffer.get(data);
         buffer.rewind();
+        // The image is closed once scanned, so read everything needed before leaving this thread
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int rowStride = plane.getRowStride();
+        final long timestamp = image.getTimestamp();
 
         AsyncTask.execute( () -> {
-            Log.d(MainActivity.LOG_TAG, "Converting to bitmap...");
-            final int width = image.getWidth();
-            final int height = image.getHeight();
-            Bitmap bitmap = Bitmap.createBitmap(width, image.getHeight(), Bitmap.Config.ARGB_8888);
-            int inputIdx = 0;
-            for(int row=0; row<height; row ++){
-                for(int col=0; col<width; col ++) {
-                    int eachVal = (data[inputIdx] & 0xFF);
-                    inputIdx++;
-                    int eachColor = 0xFF000000 | (eachVal<<16) | (eachVal<<8) | eachVal;
-                    bitmap.setPixel(col, row, eachColor);
-                }
-            }
-            Log.d(MainActivity.LOG_TAG, "Writing bitmap...");
             try {
-                try (FileOutputStream out = new FileOutputStream(file)) {
-                    bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            } catch (Exception e) {
+                // The rows are written as the camera delivered them, padding and all, which is much
+                // faster than converting to a bitmap and encoding a PNG
+                LumaFrameFile.write(file, data, width, height, rowStride, timestamp, 0, 0, COMPRESS_SAVED_FRAMES);
+                Log.d(MainActivity.LOG_TAG, "Saved frame " + file);
+            } catch (IOException e) {
                 e.printStackTrace();
             }
-            Log.d(MainActivity.LOG_TAG, "Converted to bitmap " + file);
             saveBusy = false;
         });
     }
@@ -128,26 +143,182 @@ class BarcodeFinder {
      * Parses the image data to the barcode engine and displays the results
      */
     public String getBarcodeResults(ImageReader reader) {
-        String resultString = null;
+        try (Image image = acquireImage(reader)) {
+            return scanForText(copyLuma(image), image.getWidth(), image.getHeight());
+        }
+    }
 
-        // get the latest image and convert to a bitmap
-        Image image = reader.acquireNextImage(); // Use acquireNextImage() instead of acquireLatestImage() since we created the reader with a maxImages of 1
-        saveBitmap(image, new File("/sdcard/DCIM/latest.png"));
+    /**
+     * Parses luminance data that did not come from the camera, such as a synthetic frame
+     *
+     * @param data - The luminance of the frame, without row padding
+     * @param width - The width of the frame
+     * @param height - The height of the frame
+     * @return String text of the first barcode found, or null if there is none
+     */
+    public String getBarcodeResults(byte[] data, int width, int height) {
+        return scanForText(data, width, height);
+    }
+
+    /**
+     * @return array of BarcodeType2 this looks for
+     */
+    public BarcodeType2[] getBarcodeTypes() {
+        return ScanProfiles.current(mContext).getActive().getFormats();
+    }
 
-        ByteBuffer buffer = image.getPlanes()[0].getBuffer(); // Y component is all we need
-        byte[] data = new byte[buffer.remaining()*3];
-        buffer.get(data, 0, buffer.remaining());
+    /**
+     * Parses the image data to the barcode engine and returns every barcode found in it
+     *
+     * Unlike getBarcodeResults(), this scans every rectangle and keeps all of the results, so
+     * a label carrying several barcodes can be read in a single frame.
+     *
+     * @param reader - The image reader holding the frame
+     * @return array of ScanResult2 in the frame. Empty if there are none
+     */
+    public ScanResult2[] getAllBarcodeResults(ImageReader reader) {
+        try (Image image = acquireImage(reader)) {
+            return scanImage(copyLuma(image), image.getWidth(), image.getHeight(), true);
+        }
+    }
 
+    /**
+     * Parses a burst of images of the same scene, and returns the first barcode found
+     *
+     * The images are ranked by sharpness and scanned sharpest first, stopping at the first hit. A
+     * burst taken while the head moves usually has at least one frame sharp enough to read, so the
+     * blurred ones are rarely scanned at all.
+     *
+     * @param images - The images of the burst. They are not closed
+     * @return String text of the first barcode found, or null if there is none
+     */
+    public String getBurstBarcodeResults(List<Image> images) {
+        final long[] sharpness = new long[images.size()];
+        Integer[] ranking = new Integer[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            sharpness[i] = measureSharpness(images.get(i));
+            ranking[i] = i;
+        }
+        Arrays.sort(ranking, (a, b) -> Long.compare(sharpness[b], sharpness[a]));
+
+        for (int rank = 0; rank < ranking.length; rank++) {
+            Image image = images.get(ranking[rank]);
+            if (rank == 0) {
+                saveFrame(image, LATEST_FRAME_FILE);
+            }
+            String text = scanForText(copyLuma(image), image.getWidth(), image.getHeight());
+            if (text != null) {
+                Log.d(MainActivity.LOG_TAG, "Found in burst image " + ranking[rank] + ", ranked " + (rank + 1) + " of " + ranking.length);
+                return text;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper method to measure how sharp an image is, as the sum of squared differences between
+     * neighbouring pixels. Only the center of the image is measured, where the barcode is aimed
+     *
+     * @param image - The image to measure
+     * @return long sharpness. Only meaningful compared to other images of the same scene
+     */
+    private static long measureSharpness(Image image) {
+        Image.Plane plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long sum = 0;
+        for (int y = height / 4; y < height * 3 / 4; y += SHARPNESS_STEP) {
+            int rowStart = y * rowStride;
+            for (int x = width / 4; x < width * 3 / 4; x += SHARPNESS_STEP) {
+                int pixel = buffer.get(rowStart + x) & 0xFF;
+                int dx = (buffer.get(rowStart + x + 1) & 0xFF) - pixel;
+                int dy = (buffer.get(rowStart + rowStride + x) & 0xFF) - pixel;
+                sum += dx * dx + dy * dy;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Copies the Y plane of the image into a reused buffer, removing any row padding
+     *
+     * @param image - The image to copy
+     * @return byte array holding the luminance of the image
+     */
+    private byte[] copyLuma(Image image) {
         int width = image.getWidth();
         int height = image.getHeight();
+        if (mImageData == null || mImageData.length < width * height * 3 / 2) {
+            mImageData = new byte[width * height * 3 / 2];
+        }
+        Image.Plane plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        for (int row = 0; row < height; row++) {
+            buffer.position(row * rowStride);
+            buffer.get(mImageData, row * width, width);
+        }
+        return mImageData;
+    }
+
+    /**
+     * Gets the next image of the reader, and saves a copy of it
+     *
+     * @param reader - The image reader holding the frame
+     * @return Image from the reader
+     */
+    private Image acquireImage(ImageReader reader) {
+        Image image = reader.acquireNextImage(); // Use acquireNextImage() instead of acquireLatestImage() since we created the reader with a maxImages of 1
+        saveFrame(image, LATEST_FRAME_FILE);
+        return image;
+    }
+
+    /**
+     * Finds the first barcode in the luminance data, trying the Code 128 fast path before the
+     * barcode engine
+     *
+     * @param data - The luminance of the frame, without row padding
+     * @param width - The width of the frame
+     * @param height - The height of the frame
+     * @return String text of the first barcode found, or null if there is none
+     */
+    private String scanForText(byte[] data, int width, int height) {
+        applyProfile();
+        if (mFastDecoder != null && mProfile.hasFormat(BarcodeType2.CODE_128)) {
+            long start = System.nanoTime();
+            // Only the region the engine scans, so both paths read the same barcodes
+            Rect region = getScanRect(width, height);
+            String text = mFastDecoder.decode(data, width, height, region.left, region.top, region.right, region.bottom);
+            if (text != null) {
+                Log.d(MainActivity.LOG_TAG, "Code 128 fast path read in " + (System.nanoTime() - start) / 1000 + "us");
+                return text;
+            }
+        }
+        ScanResult2[] results = scanImage(data, width, height, false);
+        if (results.length > 0) {
+            return results[0].getText();   // Use the first one, if any are available
+        }
+        return null;
+    }
+
+    /**
+     * Passes the luminance data through the barcode engine
+     *
+     * @param data - The luminance of the frame, without row padding
+     * @param width - The width of the frame
+     * @param height - The height of the frame
+     * @param findAll - True to scan all rectangles and keep all results, false to stop at the first hit
+     * @return array of ScanResult2 in the frame. Empty if there are none
+     */
+    private ScanResult2[] scanImage(byte[] data, int width, int height, boolean findAll) {
+        List<ScanResult2> allResults = new ArrayList<>();
         Log.d(MainActivity.LOG_TAG, "Processing image: " + width + "x" + height);
+        applyProfile();
 
-        // The format of the rect is upper left x, upper left  y, width, height
-        Rect[] scanRects = {
-                new Rect(0, 0, width, height), // Full image
-                //new Rect(width/2, 2*height/3, width/2, height/3), // upper left - 1/2 width 1/3 height. (Note: image is upside-down when M400 is on the right eye)
-                //new Rect(width/4, height/3, width/2, height/3), // center - 1/2 width, 1/3 height.
-        };
+        Rect[] scanRects = {getScanRect(width, height)};
+        //new Rect(width/2, 2*height/3, width/2, height/3), // upper left - 1/2 width 1/3 height. (Note: image is upside-down when M400 is on the right eye)
 
         // pass data into barcode scan engine
         for (Rect eachRect : scanRects) {
@@ -155,11 +326,24 @@ class BarcodeFinder {
             ScanResult2[] results = mScanner.scan(data, width, height, eachRect);
             // Examine the results
             if (results != null && results.length > 0) {
-                resultString = results[0].getText();   // Use the first one, if any are available
-                break;
+                Collections.addAll(allResults, results);
+                if (!findAll) {
+                    break;
+                }
             }
         }
-        return resultString;
+        return allResults.toArray(new ScanResult2[0]);
+    }
+
+    /**
+     * Helper method to find the part of the frame the profile scans. The format of the rect is
+     * upper left x, upper left  y, width, height, as the barcode engine takes it
+     */
+    private Rect getScanRect(int width, int height) {
+        if (mProfile.roi == ScanProfiles.Roi.CENTER) {
+            return new Rect(width/4, height/3, width/2, height/3); // center - 1/2 width, 1/3 height.
+        }
+        return new Rect(0, 0, width, height); // Full image
     }
 
 }
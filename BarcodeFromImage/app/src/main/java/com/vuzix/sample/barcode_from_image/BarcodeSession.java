@@ -0,0 +1,185 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+import android.graphics.Point;
+
+import com.vuzix.sdk.barcode.ScanResult2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects every barcode seen across several frames into one set.
+ *
+ * Pallet and tote labels carry several barcodes, and the same label may repeat a payload in more
+ * than one place. Barcodes are therefore identified by their payload and their position within the
+ * frame. A barcode seen again near its last known position is the same barcode, even though the
+ * user's head has moved a little between frames.
+ */
+class BarcodeSession {
+
+    // Distance, as a fraction of the frame diagonal, within which a repeated payload is merged
+    private static final float MERGE_DISTANCE = 0.15f;
+
+    private final int expectedCount;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * A single distinct barcode found during the session
+     */
+    static class Entry {
+        final String text;
+        final ScanResult2 result;
+        float centerX;      // Last known center, as a fraction of the frame width
+        float centerY;      // Last known center, as a fraction of the frame height
+        int timesSeen = 1;
+
+        Entry(ScanResult2 result, float centerX, float centerY) {
+            this.text = result.getText();
+            this.result = result;
+            this.centerX = centerX;
+            this.centerY = centerY;
+        }
+    }
+
+    /**
+     * @param expectedCount int number of distinct barcodes expected, or 0 if not known
+     */
+    BarcodeSession(int expectedCount) {
+        this.expectedCount = expectedCount;
+    }
+
+    /**
+     * Merges the results of one frame into the session
+     *
+     * @param results array of ScanResult2 found in the frame, may be null
+     * @param frameWidth int width of the frame the results were found in
+     * @param frameHeight int height of the frame the results were found in
+     * @return int number of barcodes not previously seen in this session
+     */
+    synchronized int add(ScanResult2[] results, int frameWidth, int frameHeight) {
+        if (results == null) {
+            return 0;
+        }
+        int added = 0;
+        for (ScanResult2 result : results) {
+            if (result.getText() == null) {
+                continue;
+            }
+            float centerX = 0.5f;
+            float centerY = 0.5f;
+            Point[] points = result.getResultPoints();
+            if (points != null && points.length > 0 && frameWidth > 0 && frameHeight > 0) {
+                float sumX = 0;
+                float sumY = 0;
+                for (Point point : points) {
+                    sumX += point.x;
+                    sumY += point.y;
+                }
+                centerX = sumX / points.length / frameWidth;
+                centerY = sumY / points.length / frameHeight;
+            }
+
+            Entry existing = findNearest(result.getText(), centerX, centerY);
+            if (existing != null) {
+                existing.centerX = centerX;
+                existing.centerY = centerY;
+                existing.timesSeen++;
+            } else {
+                entries.add(new Entry(result, centerX, centerY));
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Utility to find a previously seen barcode with the same payload close to the given position
+     *
+     * @return The closest matching Entry, or null if there is none within MERGE_DISTANCE
+     */
+    private Entry findNearest(String text, float centerX, float centerY) {
+        Entry nearest = null;
+        float nearestDistance = MERGE_DISTANCE * MERGE_DISTANCE;
+        for (Entry entry : entries) {
+            if (!entry.text.equals(text)) {
+                continue;
+            }
+            float dx = entry.centerX - centerX;
+            float dy = entry.centerY - centerY;
+            float distance = (dx * dx + dy * dy) / 2;
+            if (distance <= nearestDistance) {
+                nearest = entry;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @return True once the expected number of distinct barcodes has been found
+     */
+    synchronized boolean isComplete() {
+        return expectedCount > 0 && entries.size() >= expectedCount;
+    }
+
+    /**
+     * @return int number of distinct barcodes found so far
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return int number of distinct barcodes expected, or 0 if not known
+     */
+    int getExpectedCount() {
+        return expectedCount;
+    }
+
+    /**
+     * @return An unmodifiable snapshot of the distinct barcodes found so far
+     */
+    synchronized List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries));
+    }
+
+    /**
+     * Discards all barcodes found so far to start a new session
+     */
+    synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+/**
+ * A fast decoder for clean Code 128 barcodes, tried before the barcode engine.
+ *
+ * A few horizontal and diagonal lines through the frame are sampled, binarized against a local
+ * average, and decoded as Code 128, including the check character. This takes a fraction of a
+ * millisecond, where the barcode engine takes a full pass over the frame. A result is only returned
+ * when two lines agree on it. Anything unusual, such as a damaged barcode, two different barcodes,
+ * or the rarely used FNC2, FNC3 and FNC4 characters, is left to the engine.
+ *
+ * This uses no Android classes, so it can be run on a plain JVM.
+ */
+final class Code128ScanlineDecoder {
+
+    // Widths of the bars and spaces of each character, in modules
+    static final int[][] PATTERNS = {
+            {2, 1, 2, 2, 2, 2},  // 0
+            {2, 2, 2, 1, 2, 2},
+            {2, 2, 2, 2, 2, 1},
+            {1, 2, 1, 2, 2, 3},
+            {1, 2, 1, 3, 2, 2},
+            {1, 3, 1, 2, 2, 2},
+            {1, 2, 2, 2, 1, 3},
+            {1, 2, 2, 3, 1, 2},
+            {1, 3, 2, 2, 1, 2},
+            {2, 2, 1, 2, 1, 3},
+            {2, 2, 1, 3, 1, 2},  // 10
+            {2, 3, 1, 2, 1, 2},
+            {1, 1, 2, 2, 3, 2},
+            {1, 2, 2, 1, 3, 2},
+            {1, 2, 2, 2, 3, 1},
+            {1, 1, 3, 2, 2, 2},
+            {1, 2, 3, 1, 2, 2},
+            {1, 2, 3, 2, 2, 1},
+            {2, 2, 3, 2, 1, 1},
+            {2, 2, 1, 1, 3, 2},
+            {2, 2, 1, 2, 3, 1},  // 20
+            {2, 1, 3, 2, 1, 2},
+            {2, 2, 3, 1, 1, 2},
+            {3, 1, 2, 1, 3, 1},
+            {3, 1, 1, 2, 2, 2},
+            {3, 2, 1, 1, 2, 2},
+            {3, 2, 1, 2, 2, 1},
+            {3, 1, 2, 2, 1, 2},
+            {3, 2, 2, 1, 1, 2},
+            {3, 2, 2, 2, 1, 1},
+            {2, 1, 2, 1, 2, 3},  // 30
+            {2, 1, 2, 3, 2, 1},
+            {2, 3, 2, 1, 2, 1},
+            {1, 1, 1, 3, 2, 3},
+            {1, 3, 1, 1, 2, 3},
+            {1, 3, 1, 3, 2, 1},
+            {1, 1, 2, 3, 1, 3},
+            {1, 3, 2, 1, 1, 3},
+            {1, 3, 2, 3, 1, 1},
+            {2, 1, 1, 3, 1, 3},
+            {2, 3, 1, 1, 1, 3},  // 40
+            {2, 3, 1, 3, 1, 1},
+            {1, 1, 2, 1, 3, 3},
+            {1, 1, 2, 3, 3, 1},
+            {1, 3, 2, 1, 3, 1},
+            {1, 1, 3, 1, 2, 3},
+            {1, 1, 3, 3, 2, 1},
+            {1, 3, 3, 1, 2, 1},
+            {3, 1, 3, 1, 2, 1},
+            {2, 1, 1, 3, 3, 1},
+            {2, 3, 1, 1, 3, 1},  // 50
+            {2, 1, 3, 1, 1, 3},
+            {2, 1, 3, 3, 1, 1},
+            {2, 1, 3, 1, 3, 1},
+            {3, 1, 1, 1, 2, 3},
+            {3, 1, 1, 3, 2, 1},
+            {3, 3, 1, 1, 2, 1},
+            {3, 1, 2, 1, 1, 3},
+            {3, 1, 2, 3, 1, 1},
+            {3, 3, 2, 1, 1, 1},
+            {3, 1, 4, 1, 1, 1},  // 60
+            {2, 2, 1, 4, 1, 1},
+            {4, 3, 1, 1, 1, 1},
+            {1, 1, 1, 2, 2, 4},
+            {1, 1, 1, 4, 2, 2},
+            {1, 2, 1, 1, 2, 4},
+            {1, 2, 1, 4, 2, 1},
+            {1, 4, 1, 1, 2, 2},
+            {1, 4, 1, 2, 2, 1},
+            {1, 1, 2, 2, 1, 4},
+            {1, 1, 2, 4, 1, 2},  // 70
+            {1, 2, 2, 1, 1, 4},
+            {1, 2, 2, 4, 1, 1},
+            {1, 4, 2, 1, 1, 2},
+            {1, 4, 2, 2, 1, 1},
+            {2, 4, 1, 2, 1, 1},
+            {2, 2, 1, 1, 1, 4},
+            {4, 1, 3, 1, 1, 1},
+            {2, 4, 1, 1, 1, 2},
+            {1, 3, 4, 1, 1, 1},
+            {1, 1, 1, 2, 4, 2},  // 80
+            {1, 2, 1, 1, 4, 2},
+            {1, 2, 1, 2, 4, 1},
+            {1, 1, 4, 2, 1, 2},
+            {1, 2, 4, 1, 1, 2},
+            {1, 2, 4, 2, 1, 1},
+            {4, 1, 1, 2, 1, 2},
+            {4, 2, 1, 1, 1, 2},
+            {4, 2, 1, 2, 1, 1},
+            {2, 1, 2, 1, 4, 1},
+            {2, 1, 4, 1, 2, 1},  // 90
+            {4, 1, 2, 1, 2, 1},
+            {1, 1, 1, 1, 4, 3},
+            {1, 1, 1, 3, 4, 1},
+            {1, 3, 1, 1, 4, 1},
+            {1, 1, 4, 1, 1, 3},
+            {1, 1, 4, 3, 1, 1},
+            {4, 1, 1, 1, 1, 3},
+            {4, 1, 1, 3, 1, 1},
+            {1, 1, 3, 1, 4, 1},
+            {1, 1, 4, 1, 3, 1},  // 100
+            {3, 1, 1, 1, 4, 1},
+            {4, 1, 1, 1, 3, 1},
+            {2, 1, 1, 4, 1, 2},
+            {2, 1, 1, 2, 1, 4},
+            {2, 1, 1, 2, 3, 2},
+            {2, 3, 3, 1, 1, 1}  // 106 is the stop character, without its final bar
+    };
+    private static final int MODULES_PER_CHARACTER = 11;
+    private static final int ELEMENTS_PER_CHARACTER = 6;
+    private static final int CODE_SHIFT = 98;
+    private static final int CODE_CODE_C = 99;
+    private static final int CODE_CODE_B = 100;
+    private static final int CODE_CODE_A = 101;
+    private static final int CODE_FNC_1 = 102;
+    private static final int CODE_START_A = 103;
+    private static final int CODE_START_C = 105;
+    private static final int CODE_STOP = 106;
+    private static final int SET_A = 0;
+    private static final int SET_B = 1;
+    private static final int SET_C = 2;
+    private static final char GROUP_SEPARATOR = '\u001d';  // Stands for FNC1 within GS1-128 data
+
+    private static final float MAX_AVG_VARIANCE = 0.25f;
+    private static final float MAX_INDIVIDUAL_VARIANCE = 0.7f;
+    // Half the width of the window each pixel is compared with. Several times the widest bar
+    private static final int THRESHOLD_RADIUS = 64;
+    // Lines with less difference than this between darkest and lightest hold no barcode
+    private static final int MIN_CONTRAST = 48;
+    private static final int LINES_TO_AGREE = 2;
+    // Lines sampled, as fractions of the region height where each crosses the left and right edges
+    private static final float[][] LINES = {
+            {0.5f, 0.5f},
+            {0.4f, 0.4f},
+            {0.6f, 0.6f},
+            {0.3f, 0.3f},
+            {0.7f, 0.7f},
+            {0.25f, 0.75f},
+            {0.75f, 0.25f},
+    };
+
+    // Reused between frames, so a frame normally allocates nothing but the result
+    private int[] mSamples = new int[0];
+    private int[] mSums = new int[0];
+    private int[] mRuns = new int[0];
+    private int[] mCodes = new int[0];
+    private final int[] mCounters = new int[ELEMENTS_PER_CHARACTER];
+    private final StringBuilder mText = new StringBuilder();
+    private int mRunCount;
+    private boolean mFirstRunDark;
+
+    /**
+     * Looks for a Code 128 barcode in a frame
+     *
+     * @param luma byte array holding the luminance of the frame, without row padding
+     * @param width int width of the frame
+     * @param height int height of the frame
+     * @return String text of the barcode, or null if the fast path cannot read one
+     */
+    String decode(byte[] luma, int width, int height) {
+        return decode(luma, width, height, 0, 0, width, height);
+    }
+
+    /**
+     * Looks for a Code 128 barcode in part of a frame, such as the region the barcode engine scans
+     *
+     * @param luma byte array holding the luminance of the frame, without row padding
+     * @param width int width of the frame
+     * @param height int height of the frame
+     * @param left int x of the left edge of the region
+     * @param top int y of the top edge of the region
+     * @param regionWidth int width of the region
+     * @param regionHeight int height of the region
+     * @return String text of the barcode, or null if the fast path cannot read one
+     */
+    String decode(byte[] luma, int width, int height, int left, int top, int regionWidth, int regionHeight) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        int right = Math.min(width, left + regionWidth) - 1;
+        int bottom = Math.min(height, top + regionHeight) - 1;
+        if (right - left < MODULES_PER_CHARACTER || bottom < top) {
+            return null;
+        }
+        String candidate = null;
+        int agreeing = 0;
+        for (float[] line : LINES) {
+            String text = decodeLine(luma, width, left, top + (int) (line[0] * (bottom - top)),
+                    right, top + (int) (line[1] * (bottom - top)));
+            if (text == null) {
+                continue;
+            }
+            if (candidate == null) {
+                candidate = text;
+                agreeing = 1;
+            } else if (candidate.equals(text)) {
+                agreeing++;
+            } else {
+                return null;  // More than one barcode, or a misread. Leave it to the engine
+            }
+            if (agreeing >= LINES_TO_AGREE) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Samples one line across the region and decodes it in both directions
+     */
+    private String decodeLine(byte[] luma, int width, int left, int leftY, int right, int rightY) {
+        int count = Math.max(right - left, Math.abs(rightY - leftY)) + 1;
+        if (mSamples.length < count) {
+            mSamples = new int[count];
+            mSums = new int[count + 1];
+            mRuns = new int[count];
+            mCodes = new int[count / ELEMENTS_PER_CHARACTER + 1];
+        }
+        int darkest = 255;
+        int lightest = 0;
+        // Step along the line in fixed point, 16 fractional bits
+        int xStep = ((right - left) << 16) / (count - 1);
+        int yStep = ((rightY - leftY) << 16) / (count - 1);
+        int x = left << 16;
+        int y = leftY << 16;
+        for (int i = 0; i < count; i++) {
+            int sample = luma[(y >> 16) * width + (x >> 16)] & 0xFF;
+            mSamples[i] = sample;
+            mSums[i + 1] = mSums[i] + sample;
+            darkest = Math.min(darkest, sample);
+            lightest = Math.max(lightest, sample);
+            x += xStep;
+            y += yStep;
+        }
+        if (lightest - darkest < MIN_CONTRAST) {
+            return null;
+        }
+        binarize(count, (lightest - darkest) / 8);
+        String text = decodeRuns(false);
+        return (text != null) ? text : decodeRuns(true);  // The frame may be upside-down
+    }
+
+    /**
+     * Helper method to turn the samples into alternating runs of bars and spaces
+     *
+     * Each sample is compared with the average of the window around it. A sample within the margin
+     * of the average keeps the color of the previous one, so noise on a plain surface does not break
+     * the quiet zones into runs.
+     *
+     * @param count int number of samples
+     * @param margin int distance from the average needed to change color
+     */
+    private void binarize(int count, int margin) {
+        mRunCount = 0;
+        int runLength = 0;
+        boolean runDark = false;
+        for (int i = 0; i < count; i++) {
+            int low = Math.max(0, i - THRESHOLD_RADIUS);
+            int high = Math.min(count, i + THRESHOLD_RADIUS + 1);
+            // Compares with the window average, without dividing
+            int sample = mSamples[i] * (high - low);
+            int sum = mSums[high] - mSums[low];
+            int band = margin * (high - low);
+            boolean dark = (sample < sum - band) || (sample <= sum + band && runDark);
+            if (i == 0) {
+                dark = sample < sum;
+                mFirstRunDark = dark;
+                runDark = dark;
+            } else if (dark != runDark) {
+                mRuns[mRunCount++] = runLength;
+                runLength = 0;
+                runDark = dark;
+            }
+            runLength++;
+        }
+        mRuns[mRunCount++] = runLength;
+    }
+
+    /**
+     * Looks for a start character followed by a valid barcode in the runs
+     *
+     * @param reversed True to read the runs from right to left
+     * @return String text of the barcode, or null if there is none
+     */
+    private String decodeRuns(boolean reversed) {
+        boolean firstDark = reversed ? ((mRunCount - 1) % 2 == 0) == mFirstRunDark : mFirstRunDark;
+        for (int start = firstDark ? 0 : 1; start + ELEMENTS_PER_CHARACTER <= mRunCount; start += 2) {
+            // Require a quiet zone of at least half a character before the start character
+            if (start > 0 && run(start - 1, reversed) * 2 < characterWidth(start, reversed)) {
+                continue;
+            }
+            int code = matchCode(start, reversed);
+            if (code < CODE_START_A || code > CODE_START_C) {
+                continue;
+            }
+            String text = decodeFrom(start, code, reversed);
+            if (text != null) {
+                return text;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the characters following a start character, and checks the check character
+     */
+    private String decodeFrom(int start, int startCode, boolean reversed) {
+        int codeCount = 0;
+        int position = start + ELEMENTS_PER_CHARACTER;
+        while (true) {
+            if (position + ELEMENTS_PER_CHARACTER > mRunCount) {
+                return null;
+            }
+            int code = matchCode(position, reversed);
+            if (code < 0 || (code >= CODE_START_A && code != CODE_STOP)) {
+                return null;
+            }
+            if (code == CODE_STOP) {
+                // The stop character ends with one more bar, two modules wide
+                if (position + ELEMENTS_PER_CHARACTER >= mRunCount) {
+                    return null;
+                }
+                float module = characterWidth(position, reversed) / (float) MODULES_PER_CHARACTER;
+                int finalBar = run(position + ELEMENTS_PER_CHARACTER, reversed);
+                if (finalBar < module || finalBar > module * 3) {
+                    return null;
+                }
+                break;
+            }
+            mCodes[codeCount++] = code;
+            position += ELEMENTS_PER_CHARACTER;
+        }
+        if (codeCount < 2) {
+            return null;  // Needs at least one data character and the check character
+        }
+
+        int checksum = startCode;
+        for (int i = 0; i < codeCount - 1; i++) {
+            checksum += (i + 1) * mCodes[i];
+        }
+        if (checksum % 103 != mCodes[codeCount - 1]) {
+            return null;
+        }
+        return toText(startCode, codeCount - 1);
+    }
+
+    /**
+     * Helper method to convert the data characters to text, following the code set changes
+     *
+     * @return String text, or null if the data uses characters the fast path does not handle
+     */
+    private String toText(int startCode, int dataCount) {
+        mText.setLength(0);
+        int codeSet = startCode - CODE_START_A;
+        boolean shifted = false;
+        for (int i = 0; i < dataCount; i++) {
+            int code = mCodes[i];
+            int set = codeSet;
+            if (shifted) {
+                set = (codeSet == SET_A) ? SET_B : SET_A;
+                shifted = false;
+            }
+            if (set == SET_C) {
+                if (code < 100) {
+                    if (code < 10) {
+                        mText.append('0');
+                    }
+                    mText.append(code);
+                } else if (code == CODE_CODE_B) {
+                    codeSet = SET_B;
+                } else if (code == CODE_CODE_A) {
+                    codeSet = SET_A;
+                } else if (i > 0) {
+                    mText.append(GROUP_SEPARATOR);  // FNC1. A leading FNC1 only marks GS1-128
+                }
+            } else if (code < 96) {
+                if (set == SET_A && code >= 64) {
+                    mText.append((char) (code - 64));   // Control characters
+                } else {
+                    mText.append((char) (code + ' '));
+                }
+            } else if (code == CODE_SHIFT) {
+                shifted = true;
+            } else if (code == CODE_CODE_C) {
+                codeSet = SET_C;
+            } else if (code == CODE_CODE_B && set == SET_A) {
+                codeSet = SET_B;
+            } else if (code == CODE_CODE_A && set == SET_B) {
+                codeSet = SET_A;
+            } else if (code == CODE_FNC_1) {
+                if (i > 0) {
+                    mText.append(GROUP_SEPARATOR);
+                }
+            } else {
+                return null;  // FNC2, FNC3 or FNC4
+            }
+        }
+        return mText.toString();
+    }
+
+    /**
+     * Finds the character whose pattern best matches the six runs at a position
+     *
+     * @return int value of the character, or -1 if none is close enough
+     */
+    private int matchCode(int position, boolean reversed) {
+        for (int i = 0; i < ELEMENTS_PER_CHARACTER; i++) {
+            mCounters[i] = run(position + i, reversed);
+        }
+        int bestCode = -1;
+        float bestVariance = MAX_AVG_VARIANCE;
+        for (int code = 0; code < PATTERNS.length; code++) {
+            float variance = patternVariance(mCounters, PATTERNS[code]);
+            if (variance < bestVariance) {
+                bestVariance = variance;
+                bestCode = code;
+            }
+        }
+        return bestCode;
+    }
+
+    /**
+     * Measures how far the runs are from a pattern, relative to their total width
+     */
+    private static float patternVariance(int[] counters, int[] pattern) {
+        int total = 0;
+        for (int counter : counters) {
+            total += counter;
+        }
+        if (total < MODULES_PER_CHARACTER) {
+            return Float.MAX_VALUE;  // Less than a pixel per module
+        }
+        float module = total / (float) MODULES_PER_CHARACTER;
+        float maxIndividualVariance = MAX_INDIVIDUAL_VARIANCE * module;
+        float totalVariance = 0;
+        for (int i = 0; i < counters.length; i++) {
+            float variance = Math.abs(counters[i] - pattern[i] * module);
+            if (variance > maxIndividualVariance) {
+                return Float.MAX_VALUE;
+            }
+            totalVariance += variance;
+        }
+        return totalVariance / total;
+    }
+
+    private int characterWidth(int position, boolean reversed) {
+        int width = 0;
+        for (int i = 0; i < ELEMENTS_PER_CHARACTER; i++) {
+            width += run(position + i, reversed);
+        }
+        return width;
+    }
+
+    private int run(int index, boolean reversed) {
+        return mRuns[reversed ? mRunCount - 1 - index : index];
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays recorded frames through BarcodeFinder, and writes the result and timing of each to a CSV
+ * file, so hit rate and latency can be compared on the same frames after a change.
+ *
+ * The directory may hold LumaFrameFiles, such as those saved by BarcodeFinder, older PNG captures,
+ * and raw Y plane dumps. A dump holds rows of stride bytes, and is named like "frame_1408x792_s1536_t1234.y". The stride, after
+ * "_s", defaults to the width. The capture time in milliseconds, after "_t", defaults to the time
+ * the file was last modified. Dumps and LumaFrameFiles are memory-mapped rather than read, so large
+ * corpora do not churn the heap.
+ *
+ * Frames are replayed in capture order, either as fast as they can be decoded, or spaced out as they
+ * were captured.
+ */
+class FrameReplay implements Runnable {
+    private final static String TAG = MainActivity.LOG_TAG;
+    private final static Pattern RAW_NAME = Pattern.compile(".*_(\\d+)x(\\d+)(?:_s(\\d+))?(?:_t(\\d+))?\\.y");
+
+    private final BarcodeFinder mFinder;
+    private final File mDirectory;
+    private final boolean mRealTime;
+    private byte[] mFrameData;
+    private int[] mPixels;
+
+    /**
+     * A recorded frame, before it is loaded
+     */
+    private static class Frame {
+        final File file;
+        final int width;    // 0 for a PNG, until it is loaded
+        final int height;
+        final int stride;
+        final long timestamp;
+
+        Frame(File file, int width, int height, int stride, long timestamp) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.stride = stride;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * @param context Context used to create the scanner
+     * @param directory File directory holding the recorded frames. The CSV file is written there too
+     * @param realTime True to replay frames at the pace they were captured, false to replay them as fast as possible
+     */
+    FrameReplay(Context context, File directory, boolean realTime) {
+        mFinder = new BarcodeFinder(context);
+        mDirectory = directory;
+        mRealTime = realTime;
+    }
+
+    /**
+     * Replays every frame once, unless the thread is interrupted first
+     */
+    @Override
+    public void run() {
+        List<Frame> frames = listFrames();
+        if (frames.isEmpty()) {
+            Log.e(TAG, "No frames to replay in " + mDirectory);
+            return;
+        }
+        File csvFile = new File(mDirectory, "replay-" + System.currentTimeMillis() + ".csv");
+        Log.i(TAG, "Replaying " + frames.size() + " frames to " + csvFile);
+
+        long[] decodeNanos = new long[frames.size()];
+        int decoded = 0;
+        int hits = 0;
+        try (PrintWriter csv = new PrintWriter(csvFile)) {
+            csv.println("file,width,height,stride,timestamp_ms,load_ms,decode_ms,result");
+            long startTime = SystemClock.elapsedRealtime();
+            long firstTimestamp = frames.get(0).timestamp;
+            for (Frame frame : frames) {
+                if (mRealTime) {
+                    long delay = startTime + (frame.timestamp - firstTimestamp) - SystemClock.elapsedRealtime();
+                    if (delay > 0) {
+                        Thread.sleep(delay);
+                    }
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+
+                long loadStart = System.nanoTime();
+                int[] size = load(frame);
+                long decodeStart = System.nanoTime();
+                if (size == null) {
+                    csv.println(csvText(frame.file.getName()) + ",,,,," + (decodeStart - loadStart) / 1e6 + ",,");
+                    continue;
+                }
+                String result = mFinder.getBarcodeResults(mFrameData, size[0], size[1]);
+                long decodeEnd = System.nanoTime();
+
+                decodeNanos[decoded++] = decodeEnd - decodeStart;
+                if (result != null) {
+                    hits++;
+                }
+                csv.println(csvText(frame.file.getName()) + "," + size[0] + "," + size[1] + "," + size[2] + ","
+                        + frame.timestamp + "," + (decodeStart - loadStart) / 1e6 + ","
+                        + (decodeEnd - decodeStart) / 1e6 + "," + (result != null ? csvText(result) : ""));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write " + csvFile, e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report(decodeNanos, decoded, hits);
+    }
+
+    /**
+     * Helper method to find the frames in the directory, in capture order
+     *
+     * @return List of Frame found
+     */
+    private List<Frame> listFrames() {
+        List<Frame> frames = new ArrayList<>();
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return frames;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            Matcher matcher = RAW_NAME.matcher(name);
+            if (matcher.matches()) {
+                int width = Integer.parseInt(matcher.group(1));
+                int height = Integer.parseInt(matcher.group(2));
+                int stride = (matcher.group(3) != null) ? Integer.parseInt(matcher.group(3)) : width;
+                long timestamp = (matcher.group(4) != null) ? Long.parseLong(matcher.group(4)) : file.lastModified();
+                if (stride < width) {
+                    Log.w(TAG, "Skipping " + name + ". The stride is less than the width");
+                    continue;
+                }
+                frames.add(new Frame(file, width, height, stride, timestamp));
+            } else if (name.endsWith(".luma")) {
+                try {
+                    LumaFrameFile lumaFile = LumaFrameFile.open(file);
+                    frames.add(new Frame(file, 0, 0, 0, lumaFile.getTimestamp() / 1000000));
+                } catch (IOException e) {
+                    Log.w(TAG, "Skipping " + name, e);
+                }
+            } else if (name.toLowerCase().endsWith(".png")) {
+                frames.add(new Frame(file, 0, 0, 0, file.lastModified()));
+            }
+        }
+        frames.sort((a, b) -> (a.timestamp != b.timestamp)
+                ? Long.compare(a.timestamp, b.timestamp) : a.file.getName().compareTo(b.file.getName()));
+        return frames;
+    }
+
+    /**
+     * Loads the luminance of a frame into mFrameData, without row padding
+     *
+     * @param frame Frame to load
+     * @return int array of the width, height and stride, or null if the frame cannot be read
+     */
+    private int[] load(Frame frame) {
+        if (frame.width == 0) {
+            return frame.file.getName().endsWith(".luma") ? loadLumaFile(frame.file) : loadPng(frame.file);
+        }
+        long needed = (long) frame.stride * (frame.height - 1) + frame.width;
+        try (FileChannel channel = FileChannel.open(frame.file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < needed) {
+                Log.w(TAG, "Skipping " + frame.file.getName() + ". It is too short for its size and stride");
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, needed);
+            ensureFrameData(frame.width, frame.height);
+            for (int row = 0; row < frame.height; row++) {
+                buffer.position(row * frame.stride);
+                buffer.get(mFrameData, row * frame.width, frame.width);
+            }
+            return new int[] {frame.width, frame.height, frame.stride};
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + frame.file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Helper method to load the luminance of a LumaFrameFile
+     *
+     * @param file File holding the frame
+     * @return int array of the width, height and stride, or null if the file cannot be read
+     */
+    private int[] loadLumaFile(File file) {
+        try {
+            LumaFrameFile lumaFile = LumaFrameFile.open(file);
+            mFrameData = lumaFile.readLuma(mFrameData);
+            return new int[] {lumaFile.getWidth(), lumaFile.getHeight(), lumaFile.getStride()};
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Helper method to load the luminance of a PNG
+     *
+     * @param file File holding the PNG
+     * @return int array of the width, height and stride, or null if the file cannot be decoded
+     */
+    private int[] loadPng(File file) {
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap == null) {
+            Log.w(TAG, "Unable to decode " + file.getName());
+            return null;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (mPixels == null || mPixels.length < width * height) {
+            mPixels = new int[width * height];
+        }
+        bitmap.getPixels(mPixels, 0, width, 0, 0, width, height);
+        bitmap.recycle();
+        ensureFrameData(width, height);
+        for (int i = 0; i < width * height; i++) {
+            int color = mPixels[i];
+            // BT.601 luma. Older captures are gray, where this is the same as any one channel
+            mFrameData[i] = (byte) ((77 * ((color >> 16) & 0xFF) + 150 * ((color >> 8) & 0xFF) + 29 * (color & 0xFF)) >> 8);
+        }
+        return new int[] {width, height, width};
+    }
+
+    private void ensureFrameData(int width, int height) {
+        if (mFrameData == null || mFrameData.length < width * height * 3 / 2) {
+            // Sized for a full YUV 4:2:0 frame, as the camera delivers them
+            mFrameData = new byte[width * height * 3 / 2];
+        }
+    }
+
+    /**
+     * Utility to quote a value for the CSV file, if it needs it
+     *
+     * @param value String to write
+     * @return String safe to write as one CSV field
+     */
+    private static String csvText(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Logs the hit rate and the distribution of decode times
+     *
+     * @param decodeNanos long array of decode times. Only the first count are used
+     * @param count int number of frames decoded
+     * @param hits int number of frames with a barcode
+     */
+    private static void report(long[] decodeNanos, int count, int hits) {
+        if (count == 0) {
+            Log.i(TAG, "Replay finished. No frames were decoded");
+            return;
+        }
+        long[] sorted = Arrays.copyOf(decodeNanos, count);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        Log.i(TAG, String.format("Replay finished: %d of %d frames read (%.1f%%), decode ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f",
+                hits, count, hits * 100.0 / count, total / 1e6 / count, sorted[(count - 1) / 2] / 1e6,
+                sorted[(count - 1) * 9 / 10] / 1e6, sorted[(count - 1) * 99 / 100] / 1e6, sorted[count - 1] / 1e6));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility class to find barcodes in JPEG and PNG files, such as an archive of photos.
+ *
+ * Images are read with BitmapRegionDecoder, a region at a time, so a large photo is never held in
+ * memory at full resolution. Each image is first scanned scaled down to fit MAX_FRAME_PIXELS, which
+ * finds barcodes that fill much of the picture. If that finds nothing, and the image was scaled, it
+ * is scanned again in overlapping tiles at full resolution.
+ *
+ * Images are scanned in parallel, one per worker thread. The number of workers is limited by the
+ * number of cores and by the memory budget, since each worker holds one decoded region at a time.
+ * Results are passed to the listener as each image finishes, from the worker threads.
+ *
+ * The workers, with their scanners and buffers, are created once and kept for every later start(),
+ * since a scanner is never released.
+ */
+class ImageFileScanner {
+    private final static String TAG = MainActivity.LOG_TAG;
+    private final static int MAX_FRAME_PIXELS = 2048 * 2048;
+    private final static int TILE_SIZE = 2048;
+    // Barcodes smaller than this, in pixels, are whole in at least one tile
+    private final static int TILE_OVERLAP = 256;
+    // A decoded RGB_565 region, plus the luminance copied from it
+    private final static long BYTES_PER_WORKER = MAX_FRAME_PIXELS * 2L + MAX_FRAME_PIXELS * 3L / 2;
+
+    /**
+     * Receives the results of a scan, on the worker threads
+     */
+    interface Listener {
+        /**
+         * @param uri Uri of the image
+         * @param text String text of the first barcode found, or null if there is none or the image cannot be read
+         */
+        void onImageScanned(Uri uri, String text);
+
+        /**
+         * Called once, after the last image, or once the workers have stopped after cancel()
+         *
+         * @param imageCount int number of images scanned
+         * @param barcodeCount int number of images with a barcode
+         */
+        void onScanFinished(int imageCount, int barcodeCount);
+    }
+
+    private final ContentResolver mContentResolver;
+    private final Worker[] mWorkers;
+    private final List<Thread> mThreads = new ArrayList<>();
+
+    /**
+     * @param context Context used to create the scanners and open the images
+     * @param memoryBudget long bytes of image data to hold at one time, across all workers
+     */
+    ImageFileScanner(Context context, long memoryBudget) {
+        mContentResolver = context.getContentResolver();
+        int cores = Runtime.getRuntime().availableProcessors();
+        mWorkers = new Worker[(int) Math.max(1, Math.min(cores, memoryBudget / BYTES_PER_WORKER))];
+        for (int i = 0; i < mWorkers.length; i++) {
+            // Each worker has its own scanner and buffers, so nothing is shared while decoding
+            mWorkers[i] = new Worker(new BarcodeFinder(context));
+        }
+    }
+
+    /**
+     * Utility to list the images in a directory
+     *
+     * @param directory File directory to look in. Subdirectories are not searched
+     * @return List of Uri of the JPEG and PNG files, sorted by name
+     */
+    static List<Uri> listImages(File directory) {
+        List<Uri> images = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return images;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName().toLowerCase();
+            if (file.isFile() && (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png"))) {
+                images.add(Uri.fromFile(file));
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Starts scanning the images in the background
+     *
+     * @param images List of Uri of the images, as file or content URIs
+     * @param listener Listener to receive the results
+     */
+    synchronized void start(List<Uri> images, Listener listener) {
+        cancel();
+        ConcurrentLinkedQueue<Uri> queue = new ConcurrentLinkedQueue<>(images);
+        AtomicInteger running = new AtomicInteger(mWorkers.length);
+        AtomicInteger imageCount = new AtomicInteger();
+        AtomicInteger barcodeCount = new AtomicInteger();
+        Log.d(TAG, "Scanning " + images.size() + " images with " + mWorkers.length + " workers");
+        for (int i = 0; i < mWorkers.length; i++) {
+            Worker worker = mWorkers[i];
+            Thread thread = new Thread(() -> {
+                Uri uri;
+                while (!Thread.currentThread().isInterrupted() && (uri = queue.poll()) != null) {
+                    String text = worker.scan(uri);
+                    imageCount.incrementAndGet();
+                    if (text != null) {
+                        barcodeCount.incrementAndGet();
+                    }
+                    listener.onImageScanned(uri, text);
+                }
+                if (running.decrementAndGet() == 0) {
+                    listener.onScanFinished(imageCount.get(), barcodeCount.get());
+                }
+            }, "Image Scan " + i);
+            mThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the workers after the images they are scanning
+     */
+    synchronized void cancel() {
+        for (Thread thread : mThreads) {
+            thread.interrupt();
+        }
+        mThreads.clear();
+    }
+
+    /**
+     * Scans one image at a time, reusing its buffers from image to image. A thread left over from
+     * before the last start() may still be finishing an image, so scans are synchronized
+     */
+    private class Worker {
+        private final BarcodeFinder mFinder;
+        private byte[] mLuma;
+        private int[] mRow;
+
+        Worker(BarcodeFinder finder) {
+            mFinder = finder;
+        }
+
+        /**
+         * @param uri Uri of the image
+         * @return String text of the first barcode found, or null if there is none
+         */
+        synchronized String scan(Uri uri) {
+            BitmapRegionDecoder decoder;
+            try (InputStream in = mContentResolver.openInputStream(uri)) {
+                decoder = BitmapRegionDecoder.newInstance(in, false);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to open " + uri, e);
+                return null;
+            }
+            if (decoder == null) {
+                Log.w(TAG, "Unable to decode " + uri);
+                return null;
+            }
+            try {
+                int width = decoder.getWidth();
+                int height = decoder.getHeight();
+                int sampleSize = 1;
+                while ((long) (width / sampleSize) * (height / sampleSize) > MAX_FRAME_PIXELS) {
+                    sampleSize *= 2;
+                }
+                String text = scanRegion(decoder, new Rect(0, 0, width, height), sampleSize);
+                if (text != null || sampleSize == 1) {
+                    return text;
+                }
+
+                // Too large to scan whole at full resolution. Small barcodes need every pixel. A side
+                // shorter than a tile still gets one row or column of tiles
+                int step = TILE_SIZE - TILE_OVERLAP;
+                for (int top = 0; top == 0 || top < height - TILE_OVERLAP; top += step) {
+                    for (int left = 0; left == 0 || left < width - TILE_OVERLAP; left += step) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return null;
+                        }
+                        Rect tile = new Rect(left, top, Math.min(left + TILE_SIZE, width), Math.min(top + TILE_SIZE, height));
+                        text = scanRegion(decoder, tile, 1);
+                        if (text != null) {
+                            return text;
+                        }
+                    }
+                }
+                return null;
+            } finally {
+                decoder.recycle();
+            }
+        }
+
+        /**
+         * Helper method to decode one region of the image and scan its luminance
+         *
+         * @param decoder BitmapRegionDecoder of the image
+         * @param region Rect to decode, in full resolution pixels
+         * @param sampleSize int power of two to scale the region down by
+         * @return String text of the first barcode found, or null if there is none
+         */
+        private String scanRegion(BitmapRegionDecoder decoder, Rect region, int sampleSize) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = Bitmap.Config.RGB_565;   // Half the memory of ARGB, and color is discarded anyway
+            Bitmap bitmap = decoder.decodeRegion(region, options);
+            if (bitmap == null) {
+                return null;
+            }
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            if (mLuma == null || mLuma.length < width * height * 3 / 2) {
+                // Sized for a full YUV 4:2:0 frame, as the camera delivers them
+                mLuma = new byte[width * height * 3 / 2];
+            }
+            if (mRow == null || mRow.length < width) {
+                mRow = new int[width];
+            }
+            // A row at a time, so the pixels are never held as ints all at once
+            for (int y = 0; y < height; y++) {
+                bitmap.getPixels(mRow, 0, width, 0, y, width, 1);
+                int offset = y * width;
+                for (int x = 0; x < width; x++) {
+                    int color = mRow[x];
+                    mLuma[offset + x] = (byte) ((77 * ((color >> 16) & 0xFF) + 150 * ((color >> 8) & 0xFF) + 29 * (color & 0xFF)) >> 8);
+                }
+            }
+            bitmap.recycle();
+            return mFinder.getBarcodeResults(mLuma, width, height);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file holding the Y plane of one camera frame, for debugging and replay.
+ *
+ * Unlike a PNG, the rows are stored as the camera delivered them, so writing costs little more than
+ * the I/O. The payload may be compressed with LZ4 block compression, which is fast enough to keep
+ * up with the disk. It is stored uncompressed whenever compression would not make it smaller.
+ *
+ * The file is a little-endian header followed by the payload:
+ *   0  int   MAGIC
+ *   4  short version
+ *   6  short header length, so later versions can add fields
+ *   8  int   flags. FLAG_LZ4 if the payload is compressed
+ *   12 int   width
+ *   16 int   height
+ *   20 int   stride, in bytes between the starts of rows
+ *   24 long  timestamp, from Image.getTimestamp(), in nanoseconds
+ *   32 long  exposure time in nanoseconds, or 0 if unknown
+ *   40 int   orientation in degrees
+ *   44 int   payload length, in bytes as stored
+ *
+ * Files are read by memory-mapping them. An uncompressed payload is handed out as a view of the
+ * mapping, without copying it.
+ */
+final class LumaFrameFile {
+    private final static int MAGIC = 0x414D554C;   // "LUMA"
+    private final static int VERSION = 1;
+    private final static int HEADER_LENGTH = 48;
+    private final static int FLAG_LZ4 = 1;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStride;
+    private final long mTimestamp;
+    private final long mExposureTime;
+    private final int mOrientation;
+    private final boolean mCompressed;
+    private final ByteBuffer mPayload;
+    private ByteBuffer mPixels;
+
+    private LumaFrameFile(ByteBuffer file) throws IOException {
+        if (file.remaining() < HEADER_LENGTH || file.getInt(0) != MAGIC) {
+            throw new IOException("Not a luma frame file");
+        }
+        int version = file.getShort(4);
+        if (version > VERSION) {
+            throw new IOException("Unsupported luma frame file version " + version);
+        }
+        int headerLength = file.getShort(6);
+        mCompressed = (file.getInt(8) & FLAG_LZ4) != 0;
+        mWidth = file.getInt(12);
+        mHeight = file.getInt(16);
+        mStride = file.getInt(20);
+        mTimestamp = file.getLong(24);
+        mExposureTime = file.getLong(32);
+        mOrientation = file.getInt(40);
+        int payloadLength = file.getInt(44);
+        if (mWidth <= 0 || mHeight <= 0 || mStride < mWidth || headerLength < HEADER_LENGTH
+                || payloadLength < 0 || (long) headerLength + payloadLength > file.limit()
+                || (!mCompressed && payloadLength < getPixelsLength())) {
+            throw new IOException("Corrupt luma frame file");
+        }
+        file.position(headerLength);
+        file.limit(headerLength + payloadLength);
+        mPayload = file.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a file for reading. The mapping stays valid after this returns, without a file open
+     *
+     * @param file File to read
+     * @return LumaFrameFile of the frame in the file
+     * @throws IOException if the file cannot be read or is not a luma frame file
+     */
+    static LumaFrameFile open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LumaFrameFile(mapped.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Writes a frame, replacing the file once the frame is complete, so readers never see part of one
+     *
+     * @param file File to write
+     * @param data byte array of rows, each stride bytes apart
+     * @param width int width of the frame
+     * @param height int height of the frame
+     * @param stride int bytes between the starts of rows
+     * @param timestamp long capture time in nanoseconds
+     * @param exposureTime long exposure time in nanoseconds, or 0 if unknown
+     * @param orientation int orientation in degrees
+     * @param compress True to try compressing the payload
+     * @throws IOException if the file cannot be written
+     */
+    static void write(File file, byte[] data, int width, int height, int stride, long timestamp,
+                      long exposureTime, int orientation, boolean compress) throws IOException {
+        int length = stride * (height - 1) + width;
+        if (width <= 0 || height <= 0 || stride < width || data.length < length) {
+            throw new IllegalArgumentException("Frame does not fit its data");
+        }
+        ByteBuffer payload = ByteBuffer.wrap(data, 0, length);
+        int flags = 0;
+        if (compress) {
+            byte[] compressed = new byte[length];
+            int compressedLength = compress(data, length, compressed);
+            if (compressedLength >= 0) {
+                payload = ByteBuffer.wrap(compressed, 0, compressedLength);
+                flags |= FLAG_LZ4;
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putShort((short) VERSION).putShort((short) HEADER_LENGTH).putInt(flags)
+                .putInt(width).putInt(height).putInt(stride).putLong(timestamp).putLong(exposureTime)
+                .putInt(orientation).putInt(payload.remaining());
+        header.flip();
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer[] buffers = {header, payload};
+            while (payload.hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    int getWidth() {
+        return mWidth;
+    }
+
+    int getHeight() {
+        return mHeight;
+    }
+
+    int getStride() {
+        return mStride;
+    }
+
+    long getTimestamp() {
+        return mTimestamp;
+    }
+
+    long getExposureTime() {
+        return mExposureTime;
+    }
+
+    int getOrientation() {
+        return mOrientation;
+    }
+
+    boolean isCompressed() {
+        return mCompressed;
+    }
+
+    /**
+     * @return ByteBuffer of the rows, each getStride() bytes apart. A view of the file unless the
+     * payload is compressed, in which case it is decompressed the first time
+     * @throws IOException if the compressed payload is corrupt
+     */
+    synchronized ByteBuffer getPixels() throws IOException {
+        if (mPixels == null) {
+            if (mCompressed) {
+                // One bulk copy out of the mapping is much faster than reading it a byte at a time
+                byte[] compressed = new byte[mPayload.limit()];
+                mPayload.duplicate().get(compressed);
+                byte[] pixels = new byte[getPixelsLength()];
+                decompress(compressed, compressed.length, pixels);
+                mPixels = ByteBuffer.wrap(pixels);
+            } else {
+                mPixels = mPayload;
+            }
+        }
+        ByteBuffer pixels = mPixels.asReadOnlyBuffer();
+        pixels.limit(getPixelsLength());
+        return pixels;
+    }
+
+    /**
+     * Copies the luminance without row padding, as BarcodeFinder expects it
+     *
+     * @param reuse byte array to copy into if it is large enough, or null
+     * @return byte array of the luminance, sized for a full YUV 4:2:0 frame
+     * @throws IOException if the compressed payload is corrupt
+     */
+    byte[] readLuma(byte[] reuse) throws IOException {
+        byte[] luma = (reuse != null && reuse.length >= mWidth * mHeight * 3 / 2) ? reuse : new byte[mWidth * mHeight * 3 / 2];
+        ByteBuffer pixels = getPixels();
+        if (mStride == mWidth) {
+            pixels.get(luma, 0, mWidth * mHeight);
+        } else {
+            for (int row = 0; row < mHeight; row++) {
+                pixels.position(row * mStride);
+                pixels.get(luma, row * mWidth, mWidth);
+            }
+        }
+        return luma;
+    }
+
+    private int getPixelsLength() {
+        return mStride * (mHeight - 1) + mWidth;
+    }
+
+    // LZ4 block format. Each sequence is a token holding the literal and match lengths, the
+    // literals, and a two byte offset back to the match. The last bytes are always literals.
+    private final static int MIN_MATCH = 4;
+    private final static int LAST_LITERALS = 5;
+    private final static int MATCH_FIND_LIMIT = 12;
+    private final static int MAX_OFFSET = 65535;
+    private final static int HASH_BITS = 14;
+    // Frames with little repetition, such as sensor noise, are skipped through quickly
+    private final static int SKIP_TRIGGER = 6;
+
+    /**
+     * Helper method to compress with LZ4 block compression
+     *
+     * @param src byte array to compress
+     * @param length int bytes of src to compress
+     * @param dst byte array to compress into
+     * @return int length of the compressed data, or -1 if it does not fit in dst
+     */
+    static int compress(byte[] src, int length, byte[] dst) {
+        int[] table = new int[1 << HASH_BITS];   // Positions plus one, so zero means empty
+        int anchor = 0;
+        int out = 0;
+        int in = 0;
+        int limit = length - MATCH_FIND_LIMIT;
+        int misses = 0;
+        while (in < limit) {
+            int sequence = readInt(src, in);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int match = table[hash] - 1;
+            table[hash] = in + 1;
+            if (match < 0 || in - match > MAX_OFFSET || readInt(src, match) != sequence) {
+                in += 1 + (misses++ >> SKIP_TRIGGER);
+                continue;
+            }
+            misses = 0;
+            // Extend the match backwards over literals, and forwards as far as it goes
+            while (in > anchor && match > 0 && src[in - 1] == src[match - 1]) {
+                in--;
+                match--;
+            }
+            int matchLength = MIN_MATCH;
+            int maxMatch = length - LAST_LITERALS - in;
+            while (matchLength < maxMatch && src[match + matchLength] == src[in + matchLength]) {
+                matchLength++;
+            }
+
+            int literals = in - anchor;
+            if (out + 1 + literals + literals / 255 + 1 + 2 + matchLength / 255 + 1 > dst.length) {
+                return -1;
+            }
+            int token = out++;
+            out = writeLength(dst, out, literals);
+            System.arraycopy(src, anchor, dst, out, literals);
+            out += literals;
+            dst[out++] = (byte) (in - match);
+            dst[out++] = (byte) ((in - match) >> 8);
+            int matchCode = matchLength - MIN_MATCH;
+            out = writeLength(dst, out, matchCode);
+            dst[token] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchCode, 15));
+
+            in += matchLength;
+            anchor = in;
+        }
+
+        int literals = length - anchor;
+        if (out + 1 + literals + literals / 255 + 1 > dst.length) {
+            return -1;
+        }
+        dst[out++] = (byte) (Math.min(literals, 15) << 4);
+        out = writeLength(dst, out, literals);
+        System.arraycopy(src, anchor, dst, out, literals);
+        return out + literals;
+    }
+
+    /**
+     * Helper method to decompress LZ4 block compression
+     *
+     * @param src byte array holding the compressed data
+     * @param length int bytes of compressed data
+     * @param dst byte array exactly the size of the original data
+     * @throws IOException if the compressed data is corrupt
+     */
+    static void decompress(byte[] src, int length, byte[] dst) throws IOException {
+        int in = 0;
+        int out = 0;
+        try {
+            while (true) {
+                int token = src[in++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int extra;
+                    do {
+                        extra = src[in++] & 0xFF;
+                        literals += extra;
+                    } while (extra == 255);
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (in >= length) {
+                    break;
+                }
+                int offset = (src[in++] & 0xFF) | ((src[in++] & 0xFF) << 8);
+                int matchLength = token & 15;
+                if (matchLength == 15) {
+                    int extra;
+                    do {
+                        extra = src[in++] & 0xFF;
+                        matchLength += extra;
+                    } while (extra == 255);
+                }
+                matchLength += MIN_MATCH;
+                int match = out - offset;
+                if (offset == 0 || match < 0 || out + matchLength > dst.length) {
+                    throw new IOException("Corrupt compressed frame");
+                }
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, match, dst, out, matchLength);
+                    out += matchLength;
+                } else {
+                    // The match overlaps what it is copying, so it repeats
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[out++] = dst[match++];
+                    }
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // Lengths that run past either buffer
+            throw new IOException("Corrupt compressed frame", e);
+        }
+        if (in != length || out != dst.length) {
+            throw new IOException("Corrupt compressed frame");
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    private static int writeLength(byte[] dst, int out, int length) {
+        if (length >= 15) {
+            length -= 15;
+            while (length >= 255) {
+                dst[out++] = (byte) 255;
+                length -= 255;
+            }
+            dst[out++] = (byte) length;
+        }
+        return out;
+    }
+}
@@ -48,7 +48,9 @@ import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
 import android.media.ImageReader;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
@@ -65,6 +67,10 @@ import android.view.WindowManager;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.vuzix.sdk.barcode.ScanResult2;
+
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -90,13 +96,51 @@ public class MainActivity extends Activity {
     private Handler mUiThreadHandler;
 
     BarcodeFinder mBarcodeProcessor;
+    BarcodeSession mBarcodeSession;
 
     private boolean mTakingPicture;   // Prevents multiple requests at one time
 
     private final static int TAKE_PICTURE_COMPLETED = 1001;
     private static final int REQUEST_PERMISSIONS = 2222; // unique to this application
-    private final static Size CAPTURE_SIZE=  new Size(1408, 792);
-    //private final static Size CAPTURE_SIZE=  new Size(4032, 3024);
+
+    // Batch mode reads every barcode in each picture and collects them across pictures until the
+    // expected number of distinct barcodes has been found, such as all codes on a pallet label.
+    private final static boolean BATCH_MODE = false;
+    private final static int BATCH_EXPECTED_COUNT = 6;
+
+    // Burst mode takes several pictures per key press and scans the sharpest first, so a single
+    // blurred picture no longer means pressing again.
+    private final static boolean BURST_MODE = false;
+    private final static int BURST_IMAGE_COUNT = 4;
+    private final static long BURST_TIMEOUT_MS = 2000;   // Scans whatever arrived if images are dropped
+    private ImageReader mBurstReader;                    // Set, read and cleared on the background thread only
+    private final List<Image> mBurstImages = new ArrayList<>();
+    private final Runnable mBurstTimeout = this::handleBurstCompleteOnWorkerThread;
+
+    // The soak test runs synthetic barcodes through the scanner for hours and logs its performance,
+    // to catch leaks and slowdowns without anyone wearing the glasses. Watch it with logcat.
+    private final static boolean SOAK_TEST = false;
+    private final static long SOAK_TEST_DURATION_MS = 4 * 60 * 60 * 1000;
+    private Thread mSoakTestThread;
+
+    // Replay decodes recorded frames and writes the results and timings to a CSV file in the same
+    // directory. Use it to compare hit rate and latency after changing the scanner or its settings
+    private final static boolean REPLAY = false;
+    private final static String REPLAY_DIRECTORY = "/sdcard/DCIM/replay";
+    private final static boolean REPLAY_REAL_TIME = false;   // False to replay as fast as possible
+    private Thread mReplayThread;
+
+    // File scan reads barcodes from every JPEG and PNG in a directory, such as an archive of photos,
+    // using the same scanner as the camera. Results are logged as each image finishes
+    private final static boolean SCAN_FILES = false;
+    private final static String SCAN_FILES_DIRECTORY = "/sdcard/DCIM/Camera";
+    private ImageFileScanner mImageFileScanner;
+
+    // Pick list checks each result against the codes expected for this pick or receiving session,
+    // read from this file in the app's external files directory, one code per line
+    private final static boolean PICK_LIST = false;
+    private final static String PICK_LIST_FILE = "picklist.txt";
+    private volatile PickListVerifier mPickListVerifier;   // Null until loaded
 
     /**
      * Registers the UI handlers and threads, and creates the barcode scanner object
@@ -117,7 +161,8 @@ public class MainActivity extends Activity {
         mTextureView.setSurfaceTextureListener(new TextureView.SurfaceTextureListener() {
             @Override
             public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
-                surface.setDefaultBufferSize(CAPTURE_SIZE.getWidth(), CAPTURE_SIZE.getHeight());
+                Size captureSize = getCaptureSize();
+                surface.setDefaultBufferSize(captureSize.getWidth(), captureSize.getHeight());
                 openCamera();  // Open the camera whenever the surface becomes available
             }
 
@@ -157,11 +202,37 @@ public class MainActivity extends Activity {
 
         // Create the class that will handle the image and process for barcodes
         mBarcodeProcessor = new BarcodeFinder(this);
+        mBarcodeSession = new BarcodeSession(BATCH_EXPECTED_COUNT);
+        if (SOAK_TEST) {
+            Size captureSize = getCaptureSize();
+            mSoakTestThread = new Thread(new SoakTest(this, captureSize.getWidth(), captureSize.getHeight(), SOAK_TEST_DURATION_MS, 1), "Soak Test");
+            mSoakTestThread.start();
+        }
+        if (REPLAY) {
+            mReplayThread = new Thread(new FrameReplay(this, new File(REPLAY_DIRECTORY), REPLAY_REAL_TIME), "Frame Replay");
+            mReplayThread.start();
+        }
+        if (PICK_LIST) {
+            loadPickList(new File(getExternalFilesDir(null), PICK_LIST_FILE));
+        }
+        // All missing permissions are asked for at once. A second request made while the first is
+        // showing is cancelled, and would never be granted
+        List<String> missingPermissions = new ArrayList<>();
         if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED)  {
-            requestPermissions(new String[]{Manifest.permission.CAMERA}, REQUEST_PERMISSIONS);
+            missingPermissions.add(Manifest.permission.CAMERA);
         }else{
             mTextureView.setVisibility(View.VISIBLE);
         }
+        if (SCAN_FILES) {
+            if (checkSelfPermission(Manifest.permission.READ_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
+                missingPermissions.add(Manifest.permission.READ_EXTERNAL_STORAGE);
+            } else {
+                startFileScan();
+            }
+        }
+        if (!missingPermissions.isEmpty()) {
+            requestPermissions(missingPermissions.toArray(new String[0]), REQUEST_PERMISSIONS);
+        }
     }
 
     /**
@@ -175,6 +246,50 @@ public class MainActivity extends Activity {
         super.onPause();
     }
 
+    /**
+     * Stops the soak test and replay, if they are running
+     */
+    @Override
+    protected void onDestroy() {
+        if (mSoakTestThread != null) {
+            mSoakTestThread.interrupt();
+            mSoakTestThread = null;
+        }
+        if (mReplayThread != null) {
+            mReplayThread.interrupt();
+            mReplayThread = null;
+        }
+        if (mImageFileScanner != null) {
+            mImageFileScanner.cancel();
+            mImageFileScanner = null;
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Scans the images in SCAN_FILES_DIRECTORY in the background, and shows how many had a barcode
+     */
+    private void startFileScan() {
+        if (mImageFileScanner == null) {
+            // Leave half the heap for the rest of the app
+            mImageFileScanner = new ImageFileScanner(this, Runtime.getRuntime().maxMemory() / 2);
+        }
+        List<Uri> images = ImageFileScanner.listImages(new File(SCAN_FILES_DIRECTORY));
+        mImageFileScanner.start(images, new ImageFileScanner.Listener() {
+            @Override
+            public void onImageScanned(Uri uri, String text) {
+                Log.i(LOG_TAG, uri.getLastPathSegment() + ": " + (text != null ? text : "no barcode"));
+            }
+
+            @Override
+            public void onScanFinished(int imageCount, int barcodeCount) {
+                String summary = getResources().getString(R.string.files_scanned, barcodeCount, imageCount);
+                Log.i(LOG_TAG, summary);
+                mUiThreadHandler.post(() -> Toast.makeText(MainActivity.this, summary, Toast.LENGTH_LONG).show());
+            }
+        });
+    }
+
     /**
      * Handles any physical button press to take the picture and evaluate for a barcode
      * @param keycode The keycode that is pressed/released
@@ -396,7 +511,11 @@ public class MainActivity extends Activity {
             SurfaceTexture texture = mTextureView.getSurfaceTexture();
             Surface surface = new Surface(texture);
             outputSurfaces.add(surface);
-            ImageReader reader = ImageReader.newInstance(CAPTURE_SIZE.getWidth(), CAPTURE_SIZE.getHeight(), ImageFormat.YUV_420_888, 1);
+            // In burst mode the reader holds every image of the burst until they are all scanned
+            final int imageCount = BURST_MODE ? BURST_IMAGE_COUNT : 1;
+            // The size is read for every picture, so a change to the scan profile applies to the next one
+            Size captureSize = getCaptureSize();
+            ImageReader reader = ImageReader.newInstance(captureSize.getWidth(), captureSize.getHeight(), ImageFormat.YUV_420_888, imageCount);
             outputSurfaces.add(reader.getSurface());
 
             mCaptureRequestBuilder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
@@ -404,7 +523,13 @@ public class MainActivity extends Activity {
             mCaptureRequestBuilder.addTarget(reader.getSurface());
 
             // Create an image listener that run on our background thread and processes the image
-            reader.setOnImageAvailableListener(this::handleCameraImageOnWorkerThread, mBackgroundHandler);
+            if (BURST_MODE) {
+                // Queued ahead of the reader's first image, which is handled on the same thread
+                mBackgroundHandler.post(() -> mBurstReader = reader);
+                reader.setOnImageAvailableListener(this::handleBurstImageOnWorkerThread, mBackgroundHandler);
+            } else {
+                reader.setOnImageAvailableListener(this::handleCameraImageOnWorkerThread, mBackgroundHandler);
+            }
 
             // Create a configuration session. This handler can use our UI thread (null)
             mCameraDevice.createCaptureSession(outputSurfaces, new CameraCaptureSession.StateCallback() {
@@ -413,7 +538,12 @@ public class MainActivity extends Activity {
                     mCameraCaptureSessions = session;
                     try {
                         //mCaptureRequestBuilder.set(CaptureRequest.JPEG_ORIENTATION, 0);
-                        mCameraCaptureSessions.capture(mCaptureRequestBuilder.build(), null, null);
+                        if (BURST_MODE) {
+                            mBackgroundHandler.postDelayed(mBurstTimeout, BURST_TIMEOUT_MS);
+                            mCameraCaptureSessions.captureBurst(Collections.nCopies(imageCount, mCaptureRequestBuilder.build()), null, null);
+                        } else {
+                            mCameraCaptureSessions.capture(mCaptureRequestBuilder.build(), null, null);
+                        }
                     } catch (CameraAccessException e) {
                         e.printStackTrace();
                     }
@@ -436,9 +566,59 @@ public class MainActivity extends Activity {
      */
     private void handleCameraImageOnWorkerThread(ImageReader reader){
         Log.d(LOG_TAG, "Processing barcode results");
-        String dataToShow = mBarcodeProcessor.getBarcodeResults(reader);
+        String dataToShow;
+        if (BATCH_MODE) {
+            dataToShow = getBatchResults(reader);
+        } else {
+            dataToShow = describePick(mBarcodeProcessor.getBarcodeResults(reader));
+        }
         reader.close();
+        showResultOnWorkerThread(dataToShow);
+    }
+
+    /**
+     * Collects the images of a burst until all of them have arrived
+     *
+     * @param reader - The image reader
+     */
+    private void handleBurstImageOnWorkerThread(ImageReader reader) {
+        if (reader != mBurstReader) {
+            return;  // The burst already timed out
+        }
+        Image image = reader.acquireNextImage();
+        if (image != null) {
+            mBurstImages.add(image);
+        }
+        if (mBurstImages.size() == BURST_IMAGE_COUNT) {
+            handleBurstCompleteOnWorkerThread();
+        }
+    }
+
+    /**
+     * Scans the images of the burst, sharpest first, and releases them
+     */
+    private void handleBurstCompleteOnWorkerThread() {
+        mBackgroundHandler.removeCallbacks(mBurstTimeout);
+        if (mBurstReader == null) {
+            return;
+        }
+        Log.d(LOG_TAG, "Processing burst of " + mBurstImages.size() + " images");
+        String dataToShow = describePick(mBarcodeProcessor.getBurstBarcodeResults(mBurstImages));
+        for (Image image : mBurstImages) {
+            image.close();
+        }
+        mBurstImages.clear();
+        mBurstReader.close();
+        mBurstReader = null;
+        showResultOnWorkerThread(dataToShow);
+    }
 
+    /**
+     * Shows the result of a picture, and returns to the live preview
+     *
+     * @param dataToShow - The text to show, or null if no barcode was found
+     */
+    private void showResultOnWorkerThread(String dataToShow) {
         if(dataToShow == null) {
             dataToShow = getResources().getString(R.string.no_barcode_in_image);
         }
@@ -453,7 +633,84 @@ public class MainActivity extends Activity {
     }
 
     /**
-     * Handle permissions response.  Either closes the app, or initializes the camera
+     * Helper method to get the picture size of the active scan profile, such as 1408x792 or 4032x3024
+     *
+     * @return Size of the pictures to scan
+     */
+    private Size getCaptureSize() {
+        ScanProfiles.Profile profile = ScanProfiles.current(this).getActive();
+        return new Size(profile.width, profile.height);
+    }
+
+    /**
+     * Helper method to read the pick list on a worker thread. Results are not checked until it is loaded
+     *
+     * @param manifest File listing the expected codes
+     */
+    private void loadPickList(File manifest) {
+        new Thread(() -> {
+            try {
+                PickListVerifier verifier = PickListVerifier.load(manifest);
+                mPickListVerifier = verifier;
+                Log.i(LOG_TAG, "Loaded " + verifier.getCount() + " pick list codes");
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Unable to read pick list " + manifest, e);
+            }
+        }, "Pick List Loader").start();
+    }
+
+    /**
+     * Checks a barcode against the pick list, and marks it if it is not expected or was already picked
+     *
+     * @param text - The text of the barcode, or null if none was found
+     * @return String text to show
+     */
+    private String describePick(String text) {
+        PickListVerifier verifier = mPickListVerifier;
+        if (text == null || verifier == null) {
+            return text;
+        }
+        switch (verifier.verify(text)) {
+            case UNEXPECTED:
+                return getResources().getString(R.string.pick_unexpected, text);
+            case DUPLICATE:
+                return getResources().getString(R.string.pick_duplicate, text);
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * Adds every barcode in the image to the batch session
+     *
+     * @param reader - The image reader
+     * @return String describing the progress of the batch, or all barcodes once it is complete
+     */
+    private String getBatchResults(ImageReader reader) {
+        ScanResult2[] results = mBarcodeProcessor.getAllBarcodeResults(reader);
+        int added = mBarcodeSession.add(results, reader.getWidth(), reader.getHeight());
+        if (mBarcodeSession.size() == 0) {
+            return null;
+        }
+        if (!mBarcodeSession.isComplete()) {
+            return getResources().getString(R.string.batch_progress, added, mBarcodeSession.size(), mBarcodeSession.getExpectedCount());
+        }
+
+        // All expected barcodes were found. Show them and start a new batch
+        StringBuilder allResults = new StringBuilder();
+        for (BarcodeSession.Entry entry : mBarcodeSession.getEntries()) {
+            if (allResults.length() > 0) {
+                allResults.append('\n');
+            }
+            allResults.append(describePick(entry.text));
+        }
+        mBarcodeSession.clear();
+        return allResults.toString();
+    }
+
+    /**
+     * Handle permissions response.  Either closes the app, or initializes the camera. Also starts
+     * scanning files once storage permission is granted
      *
      * @param requestCode - unique value to identify the request
      * @param permissions - specific permission being granted/denied
@@ -462,12 +719,22 @@ public class MainActivity extends Activity {
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
         if ( (requestCode == REQUEST_PERMISSIONS) && (grantResults.length > 0)) {
-            if (grantResults[0] == PackageManager.PERMISSION_DENIED) {
-                Toast.makeText(MainActivity.this, getResources().getString(R.string.no_permission), Toast.LENGTH_LONG).show();
-                finish();
-            } else if (grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                mTextureView.setVisibility(View.VISIBLE);
-
+            for (int i = 0; i < permissions.length && i < grantResults.length; i++) {
+                boolean granted = (grantResults[i] == PackageManager.PERMISSION_GRANTED);
+                if (Manifest.permission.CAMERA.equals(permissions[i])) {
+                    if (!granted) {
+                        Toast.makeText(MainActivity.this, getResources().getString(R.string.no_permission), Toast.LENGTH_LONG).show();
+                        finish();
+                        return;
+                    }
+                    mTextureView.setVisibility(View.VISIBLE);
+                } else if (Manifest.permission.READ_EXTERNAL_STORAGE.equals(permissions[i])) {
+                    if (granted) {
+                        startFileScan();
+                    } else {
+                        Log.w(LOG_TAG, "Storage permission denied. Not scanning files");
+                    }
+                }
             }
         } else {
             super.onRequestPermissionsResult(requestCode, permissions, grantResults);
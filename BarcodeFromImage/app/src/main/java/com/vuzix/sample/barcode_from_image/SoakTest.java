@@ -0,0 +1,206 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vuzix.sdk.barcode.BarcodeType2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds synthetic frames through BarcodeFinder for a long time, and logs how it performs.
+ *
+ * Every REPORT_INTERVAL_MS a report is logged with the throughput, the distribution of decode times,
+ * the hit rate of each symbology, and how far the Java and native heaps have grown since the first
+ * report. Heap growth that keeps rising over hours points to a leak. A shift in decode times points
+ * to a performance regression.
+ *
+ * Only the symbologies that BarcodeFinder looks for are generated.
+ */
+class SoakTest implements Runnable {
+    private final static String TAG = MainActivity.LOG_TAG;
+    private final static long REPORT_INTERVAL_MS = 60000;
+    private final static int LATENCY_BUCKET_MICROS = 100;
+    private final static int LATENCY_BUCKETS = 1000;   // Up to 100ms. Slower decodes share the last bucket
+
+    private final BarcodeFinder mFinder;
+    private final SyntheticFrameGenerator mGenerator;
+    private final int mWidth;
+    private final int mHeight;
+    private final long mDurationMillis;
+    private final SyntheticFrameGenerator.Symbology[] mSymbologies;
+
+    private final int[] mLatencyHistogram = new int[LATENCY_BUCKETS];
+    private final long[] mAttempts;
+    private final long[] mHits;
+    private long mFrames;
+    private long mMisreads;
+    private long mTotalLatencyNanos;
+    private long mMaxLatencyNanos;
+    private long mBaselineJavaHeap = -1;
+    private long mBaselineNativeHeap;
+
+    /**
+     * @param context Context used to create the scanner
+     * @param width int width of the frames
+     * @param height int height of the frames
+     * @param durationMillis long time to run for, unless the thread is interrupted first
+     * @param seed long seed for the generated frames, so runs can be repeated
+     */
+    SoakTest(Context context, int width, int height, long durationMillis, long seed) {
+        mFinder = new BarcodeFinder(context);
+        mGenerator = new SyntheticFrameGenerator(width, height, seed);
+        mWidth = width;
+        mHeight = height;
+        mDurationMillis = durationMillis;
+
+        List<SyntheticFrameGenerator.Symbology> symbologies = new ArrayList<>();
+        for (BarcodeType2 type : mFinder.getBarcodeTypes()) {
+            for (SyntheticFrameGenerator.Symbology symbology : SyntheticFrameGenerator.Symbology.values()) {
+                if (symbology.name().equals(type.name())) {
+                    symbologies.add(symbology);
+                }
+            }
+        }
+        mSymbologies = symbologies.toArray(new SyntheticFrameGenerator.Symbology[0]);
+        mAttempts = new long[mSymbologies.length];
+        mHits = new long[mSymbologies.length];
+    }
+
+    /**
+     * Runs until the duration has passed or the thread is interrupted
+     */
+    @Override
+    public void run() {
+        if (mSymbologies.length == 0) {
+            Log.e(TAG, "Soak test cannot generate any of the barcode types scanned");
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        long nextReport = startTime + REPORT_INTERVAL_MS;
+        Log.i(TAG, "Soak test started");
+        report(0);
+        while (!Thread.currentThread().isInterrupted() && SystemClock.elapsedRealtime() - startTime < mDurationMillis) {
+            int index = (int) (mFrames % mSymbologies.length);
+            SyntheticFrameGenerator.Symbology symbology = mSymbologies[index];
+            String expected = mGenerator.randomText(symbology);
+            byte[] frame = mGenerator.render(symbology, expected, mGenerator.randomOptions());
+
+            long start = System.nanoTime();
+            String result = mFinder.getBarcodeResults(frame, mWidth, mHeight);
+            recordLatency(System.nanoTime() - start);
+
+            mAttempts[index]++;
+            if (expected.equals(result)) {
+                mHits[index]++;
+            } else if (result != null) {
+                mMisreads++;
+                Log.w(TAG, "Soak test misread " + symbology + " \"" + expected + "\" as \"" + result + "\"");
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            if (now >= nextReport) {
+                report(now - startTime);
+                nextReport += REPORT_INTERVAL_MS;
+            }
+        }
+        report(SystemClock.elapsedRealtime() - startTime);
+        Log.i(TAG, "Soak test finished");
+    }
+
+    private void recordLatency(long nanos) {
+        mFrames++;
+        mTotalLatencyNanos += nanos;
+        mMaxLatencyNanos = Math.max(mMaxLatencyNanos, nanos);
+        int bucket = (int) Math.min(LATENCY_BUCKETS - 1, nanos / 1000 / LATENCY_BUCKET_MICROS);
+        mLatencyHistogram[bucket]++;
+    }
+
+    /**
+     * Helper method to find a percentile of the decode times
+     *
+     * @param fraction double percentile, from 0 to 1
+     * @return double upper bound of the decode time, in milliseconds
+     */
+    private double latencyPercentile(double fraction) {
+        long target = (long) Math.ceil(mFrames * fraction);
+        long count = 0;
+        for (int bucket = 0; bucket < LATENCY_BUCKETS; bucket++) {
+            count += mLatencyHistogram[bucket];
+            if (count >= target) {
+                return (bucket + 1) * LATENCY_BUCKET_MICROS / 1000.0;
+            }
+        }
+        return mMaxLatencyNanos / 1e6;
+    }
+
+    /**
+     * Logs the statistics so far
+     *
+     * @param elapsedMillis long time since the test started
+     */
+    private void report(long elapsedMillis) {
+        Runtime runtime = Runtime.getRuntime();
+        long javaHeap = runtime.totalMemory() - runtime.freeMemory();
+        long nativeHeap = Debug.getNativeHeapAllocatedSize();
+        if (mBaselineJavaHeap < 0) {
+            mBaselineJavaHeap = javaHeap;
+            mBaselineNativeHeap = nativeHeap;
+        }
+        if (mFrames == 0) {
+            Log.i(TAG, "Soak: java heap " + javaHeap / 1024 + "KB, native heap " + nativeHeap / 1024 + "KB");
+            return;
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Soak %ds: %d frames, %.1f frames/s, %.1f decodes/s of decode time",
+                elapsedMillis / 1000, mFrames, mFrames * 1000.0 / Math.max(1, elapsedMillis),
+                mFrames * 1e9 / Math.max(1, mTotalLatencyNanos)));
+        report.append(String.format("\n  decode ms: mean %.2f, p50 %.1f, p90 %.1f, p99 %.1f, max %.1f",
+                mTotalLatencyNanos / 1e6 / mFrames, latencyPercentile(0.5), latencyPercentile(0.9),
+                latencyPercentile(0.99), mMaxLatencyNanos / 1e6));
+        for (int i = 0; i < mSymbologies.length; i++) {
+            report.append(String.format("\n  %s: %d of %d read (%.1f%%)", mSymbologies[i], mHits[i], mAttempts[i],
+                    mAttempts[i] > 0 ? mHits[i] * 100.0 / mAttempts[i] : 0));
+        }
+        report.append("\n  misreads: ").append(mMisreads);
+        report.append(String.format("\n  heap growth: java %+dKB, native %+dKB",
+                (javaHeap - mBaselineJavaHeap) / 1024, (nativeHeap - mBaselineNativeHeap) / 1024));
+        Log.i(TAG, report.toString());
+    }
+}
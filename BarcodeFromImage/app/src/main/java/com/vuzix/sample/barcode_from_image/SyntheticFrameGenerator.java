@@ -0,0 +1,584 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+import java.util.Random;
+
+/**
+ * Renders barcodes into luminance frames, so the scanning code can be exercised without a camera.
+ *
+ * QR codes (versions 1 to 5, error correction level L), Code 128 and UPC-A are supported. Each frame
+ * can be rotated, viewed in perspective, blurred, and have noise, glare and inversion added, roughly
+ * as the camera would see a label. The frame buffer is reused, so rendering allocates nothing once
+ * the first frame is done.
+ *
+ * This uses no Android classes, so it can be run on a plain JVM.
+ */
+final class SyntheticFrameGenerator {
+
+    /**
+     * The symbologies that can be rendered. The names match those of BarcodeType2
+     */
+    enum Symbology {
+        QR_CODE,
+        CODE_128,
+        UPC_A
+    }
+
+    /**
+     * How a barcode is rendered into a frame
+     */
+    static final class Options {
+        float size = 0.5f;           // Width of the barcode, as a fraction of the frame width
+        float offsetX;               // Offset of the center, as a fraction of the frame width
+        float offsetY;               // Offset of the center, as a fraction of the frame height
+        float rotationDegrees;
+        float perspective;           // 0 for none. 0.3 makes the far edge 30% shorter than the near one
+        int blurRadius;              // Box blur radius, in pixels
+        float noise;                 // Standard deviation of the noise, in luminance levels
+        float glare;                 // 0 for none, 1 for a highlight that saturates to white
+        boolean inverted;            // Light bars on a dark background
+    }
+
+    private static final int DARK = 40;
+    private static final int LIGHT = 210;
+    private static final int BACKGROUND = 120;
+    private static final int QUIET_ZONE_1D = 10;
+    private static final int QUIET_ZONE_QR = 4;
+    // Height of a 1D barcode, as a fraction of its width including the quiet zones
+    private static final float HEIGHT_1D = 0.35f;
+    private static final int NOISE_TABLE_SIZE = 1 << 16;
+
+    // UPC-A digit patterns on the left half: space, bar, space, bar widths
+    private static final int[][] UPC_PATTERNS = {
+            {3, 2, 1, 1}, {2, 2, 2, 1}, {2, 1, 2, 2}, {1, 4, 1, 1}, {1, 1, 3, 2},
+            {1, 2, 3, 1}, {1, 1, 1, 4}, {1, 3, 1, 2}, {1, 2, 1, 3}, {3, 1, 1, 2},
+    };
+    // Byte mode capacity, data codewords and error correction codewords of QR versions 1 to 5 at level L
+    private static final int[] QR_BYTE_CAPACITY = {17, 32, 53, 78, 106};
+    private static final int[] QR_DATA_CODEWORDS = {19, 34, 55, 80, 108};
+    private static final int[] QR_EC_CODEWORDS = {7, 10, 15, 20, 26};
+    private static final String TEXT_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-./";
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Random mRandom;
+    private final byte[] mFrame;
+    private final int[] mPixels;
+    private final int[] mBlurTemp;
+    // Gaussian noise is drawn from this table, which is much faster than a call per pixel. The noise
+    // repeats every NOISE_TABLE_SIZE pixels, which no decoder will notice
+    private final float[] mNoiseTable = new float[NOISE_TABLE_SIZE];
+
+    /**
+     * @param width int width of the frames
+     * @param height int height of the frames
+     * @param seed long seed for the random content, so runs can be repeated
+     */
+    SyntheticFrameGenerator(int width, int height, long seed) {
+        mWidth = width;
+        mHeight = height;
+        mRandom = new Random(seed);
+        mFrame = new byte[width * height * 3 / 2];   // Sized as a YUV 4:2:0 frame, as from the camera
+        mPixels = new int[width * height];
+        mBlurTemp = new int[width * height];
+        for (int i = 0; i < NOISE_TABLE_SIZE; i++) {
+            mNoiseTable[i] = (float) mRandom.nextGaussian();
+        }
+    }
+
+    /**
+     * Chooses random text that the symbology can hold
+     *
+     * @param symbology Symbology to choose text for
+     * @return String text, including the check digit for UPC-A
+     */
+    String randomText(Symbology symbology) {
+        StringBuilder text = new StringBuilder();
+        if (symbology == Symbology.UPC_A) {
+            for (int i = 0; i < 11; i++) {
+                text.append((char) ('0' + mRandom.nextInt(10)));
+            }
+            text.append(upcCheckDigit(text));
+        } else {
+            int length = (symbology == Symbology.QR_CODE) ? 8 + mRandom.nextInt(40) : 6 + mRandom.nextInt(14);
+            for (int i = 0; i < length; i++) {
+                text.append(TEXT_CHARACTERS.charAt(mRandom.nextInt(TEXT_CHARACTERS.length())));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Chooses random rendering options, from clean to hard but readable
+     *
+     * @return new Options
+     */
+    Options randomOptions() {
+        Options options = new Options();
+        options.size = 0.3f + mRandom.nextFloat() * 0.4f;
+        options.offsetX = (mRandom.nextFloat() - 0.5f) * 0.2f;
+        options.offsetY = (mRandom.nextFloat() - 0.5f) * 0.2f;
+        options.rotationDegrees = (mRandom.nextFloat() - 0.5f) * 40;
+        options.perspective = mRandom.nextFloat() * 0.3f;
+        options.blurRadius = mRandom.nextInt(3);
+        options.noise = mRandom.nextFloat() * 12;
+        options.glare = (mRandom.nextInt(4) == 0) ? mRandom.nextFloat() * 0.6f : 0;
+        options.inverted = mRandom.nextInt(10) == 0;
+        return options;
+    }
+
+    /**
+     * Renders a barcode into the frame buffer
+     *
+     * @param symbology Symbology to render
+     * @param text String to encode. Digits only, 11 or 12 of them, for UPC-A
+     * @param options Options describing how the barcode is seen
+     * @return byte array holding the luminance of the frame, without row padding. Reused by the next call
+     */
+    byte[] render(Symbology symbology, String text, Options options) {
+        boolean[][] modules;
+        int quietZone;
+        switch (symbology) {
+            case QR_CODE:
+                modules = encodeQr(text);
+                quietZone = QUIET_ZONE_QR;
+                break;
+            case UPC_A:
+                modules = encodeUpcA(text);
+                quietZone = QUIET_ZONE_1D;
+                break;
+            default:
+                modules = encodeCode128(text);
+                quietZone = QUIET_ZONE_1D;
+                break;
+        }
+        drawSymbol(modules, quietZone, options);
+        if (options.blurRadius > 0) {
+            blur(options.blurRadius);
+        }
+        finish(options);
+        return mFrame;
+    }
+
+    /**
+     * Helper method to draw the symbol, with its quiet zone, through a rotation and perspective
+     */
+    private void drawSymbol(boolean[][] modules, int quietZone, Options options) {
+        int rows = modules.length;
+        int columns = modules[0].length;
+        float symbolColumns = columns + 2 * quietZone;
+        float symbolRows = (rows == 1) ? symbolColumns * HEIGHT_1D : rows + 2 * quietZone;
+
+        // Corners of the symbol in the frame, clockwise from the top left
+        float halfWidth = options.size * mWidth / 2;
+        float halfHeight = halfWidth * symbolRows / symbolColumns;
+        float topScale = 1 - options.perspective / 2;
+        float bottomScale = 1 + options.perspective / 2;
+        float[] cornersX = {-halfWidth * topScale, halfWidth * topScale, halfWidth * bottomScale, -halfWidth * bottomScale};
+        float[] cornersY = {-halfHeight, -halfHeight, halfHeight, halfHeight};
+        double angle = Math.toRadians(options.rotationDegrees);
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+        float centerX = mWidth * (0.5f + options.offsetX);
+        float centerY = mHeight * (0.5f + options.offsetY);
+        for (int i = 0; i < 4; i++) {
+            float x = cornersX[i];
+            float y = cornersY[i];
+            cornersX[i] = centerX + x * cos - y * sin;
+            cornersY[i] = centerY + x * sin + y * cos;
+        }
+
+        // Map each pixel back to the unit square of the symbol
+        double[] m = squareToQuad(cornersX, cornersY);
+        double ia = m[4] - m[5] * m[7];
+        double ib = m[2] * m[7] - m[1];
+        double ic = m[1] * m[5] - m[2] * m[4];
+        double id = m[5] * m[6] - m[3];
+        double ie = m[0] - m[2] * m[6];
+        double iF = m[2] * m[3] - m[0] * m[5];
+        double ig = m[3] * m[7] - m[4] * m[6];
+        double ih = m[1] * m[6] - m[0] * m[7];
+        double ii = m[0] * m[4] - m[1] * m[3];
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                double w = ig * x + ih * y + ii;
+                double u = (ia * x + ib * y + ic) / w;
+                double v = (id * x + ie * y + iF) / w;
+                int value = BACKGROUND;
+                if (u >= 0 && u < 1 && v >= 0 && v < 1) {
+                    int column = (int) (u * symbolColumns) - quietZone;
+                    int row = (rows == 1) ? 0 : (int) (v * symbolRows) - quietZone;
+                    boolean dark = column >= 0 && column < columns && row >= 0 && row < rows && modules[row][column];
+                    value = dark ? DARK : LIGHT;
+                }
+                mPixels[y * mWidth + x] = value;
+            }
+        }
+    }
+
+    /**
+     * Helper method to compute the perspective transform from the unit square to a quadrilateral
+     *
+     * @return double array {a, b, c, d, e, f, g, h} where x = (a u + b v + c) / (g u + h v + 1) and
+     * y = (d u + e v + f) / (g u + h v + 1)
+     */
+    private static double[] squareToQuad(float[] x, float[] y) {
+        double dx3 = x[0] - x[1] + x[2] - x[3];
+        double dy3 = y[0] - y[1] + y[2] - y[3];
+        if (dx3 == 0 && dy3 == 0) {
+            return new double[]{x[1] - x[0], x[2] - x[1], x[0], y[1] - y[0], y[2] - y[1], y[0], 0, 0};
+        }
+        double dx1 = x[1] - x[2];
+        double dx2 = x[3] - x[2];
+        double dy1 = y[1] - y[2];
+        double dy2 = y[3] - y[2];
+        double denominator = dx1 * dy2 - dx2 * dy1;
+        double g = (dx3 * dy2 - dx2 * dy3) / denominator;
+        double h = (dx1 * dy3 - dx3 * dy1) / denominator;
+        return new double[]{x[1] - x[0] + g * x[1], x[3] - x[0] + h * x[3], x[0],
+                y[1] - y[0] + g * y[1], y[3] - y[0] + h * y[3], y[0], g, h};
+    }
+
+    /**
+     * Helper method to apply a box blur, horizontally then vertically. Pixels within the radius of
+     * the edges are left as they are
+     */
+    private void blur(int radius) {
+        int span = 2 * radius + 1;
+        System.arraycopy(mPixels, 0, mBlurTemp, 0, mPixels.length);
+        for (int y = 0; y < mHeight; y++) {
+            int row = y * mWidth;
+            int sum = 0;
+            for (int x = 0; x < span; x++) {
+                sum += mPixels[row + x];
+            }
+            for (int x = radius; x < mWidth - radius - 1; x++) {
+                mBlurTemp[row + x] = sum / span;
+                sum += mPixels[row + x + radius + 1] - mPixels[row + x - radius];
+            }
+        }
+        System.arraycopy(mBlurTemp, 0, mPixels, 0, mPixels.length);
+        for (int x = 0; x < mWidth; x++) {
+            int sum = 0;
+            for (int y = 0; y < span; y++) {
+                sum += mBlurTemp[y * mWidth + x];
+            }
+            for (int y = radius; y < mHeight - radius - 1; y++) {
+                mPixels[y * mWidth + x] = sum / span;
+                sum += mBlurTemp[(y + radius + 1) * mWidth + x] - mBlurTemp[(y - radius) * mWidth + x];
+            }
+        }
+    }
+
+    /**
+     * Helper method to add glare, noise and inversion, and write the final luminance
+     */
+    private void finish(Options options) {
+        float glareX = mWidth * mRandom.nextFloat();
+        float glareY = mHeight * mRandom.nextFloat();
+        float glareRadius = mWidth * (0.1f + mRandom.nextFloat() * 0.2f);
+        float glareScale = 1 / (glareRadius * glareRadius);
+        int noiseIndex = mRandom.nextInt(NOISE_TABLE_SIZE);
+        for (int y = 0; y < mHeight; y++) {
+            for (int x = 0; x < mWidth; x++) {
+                float value = mPixels[y * mWidth + x];
+                if (options.glare > 0) {
+                    float dx = x - glareX;
+                    float dy = y - glareY;
+                    float distance = (dx * dx + dy * dy) * glareScale;
+                    if (distance < 9) {  // Beyond three radii the glare is too faint to matter
+                        value += options.glare * 255 * (float) Math.exp(-distance);
+                    }
+                }
+                if (options.noise > 0) {
+                    value += mNoiseTable[noiseIndex] * options.noise;
+                    noiseIndex = (noiseIndex + 1) & (NOISE_TABLE_SIZE - 1);
+                }
+                if (options.inverted) {
+                    value = 255 - value;
+                }
+                mFrame[y * mWidth + x] = (byte) Math.max(0, Math.min(255, (int) value));
+            }
+        }
+    }
+
+    /**
+     * Encodes text as Code 128, in code set C for an even number of digits and code set B otherwise
+     *
+     * @return boolean array of one row, true for each dark module
+     */
+    private static boolean[][] encodeCode128(String text) {
+        boolean digits = text.length() % 2 == 0;
+        for (int i = 0; i < text.length() && digits; i++) {
+            digits = Character.isDigit(text.charAt(i));
+        }
+        int[] codes = new int[(digits ? text.length() / 2 : text.length()) + 3];
+        int count = 0;
+        codes[count++] = digits ? 105 : 104;
+        for (int i = 0; i < text.length(); i += digits ? 2 : 1) {
+            codes[count++] = digits ? Integer.parseInt(text.substring(i, i + 2)) : text.charAt(i) - ' ';
+        }
+        int checksum = codes[0];
+        for (int i = 1; i < count; i++) {
+            checksum += i * codes[i];
+        }
+        codes[count++] = checksum % 103;
+        codes[count++] = 106;
+
+        boolean[][] modules = new boolean[1][count * 11 + 2];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            position = appendWidths(modules[0], position, Code128ScanlineDecoder.PATTERNS[codes[i]], true);
+        }
+        appendWidths(modules[0], position, new int[]{2}, true);  // Final bar of the stop character
+        return modules;
+    }
+
+    /**
+     * Encodes 11 or 12 digits as UPC-A. The check digit is computed if only 11 are given
+     *
+     * @return boolean array of one row, true for each dark module
+     */
+    private static boolean[][] encodeUpcA(String text) {
+        StringBuilder digits = new StringBuilder(text.substring(0, 11));
+        digits.append(upcCheckDigit(digits));
+        boolean[][] modules = new boolean[1][95];
+        int position = appendWidths(modules[0], 0, new int[]{1, 1, 1}, true);
+        for (int i = 0; i < 6; i++) {
+            position = appendWidths(modules[0], position, UPC_PATTERNS[digits.charAt(i) - '0'], false);
+        }
+        position = appendWidths(modules[0], position, new int[]{1, 1, 1, 1, 1}, false);
+        for (int i = 6; i < 12; i++) {
+            position = appendWidths(modules[0], position, UPC_PATTERNS[digits.charAt(i) - '0'], true);
+        }
+        appendWidths(modules[0], position, new int[]{1, 1, 1}, true);
+        return modules;
+    }
+
+    private static char upcCheckDigit(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 11; i++) {
+            sum += (digits.charAt(i) - '0') * ((i % 2 == 0) ? 3 : 1);
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    /**
+     * Helper method to write alternating bars and spaces into a row of modules
+     *
+     * @return int position following the last element
+     */
+    private static int appendWidths(boolean[] row, int position, int[] widths, boolean startDark) {
+        boolean dark = startDark;
+        for (int width : widths) {
+            for (int i = 0; i < width; i++) {
+                row[position++] = dark;
+            }
+            dark = !dark;
+        }
+        return position;
+    }
+
+    /**
+     * Encodes text as a QR code in byte mode, with error correction level L and mask pattern 0
+     *
+     * @return boolean array of rows, true for each dark module
+     */
+    private static boolean[][] encodeQr(String text) {
+        byte[] bytes = text.getBytes(java.nio.charset.StandardCharsets.ISO_8859_1);
+        int version = 1;
+        while (bytes.length > QR_BYTE_CAPACITY[version - 1]) {
+            if (++version > QR_BYTE_CAPACITY.length) {
+                throw new IllegalArgumentException("Text too long for a version 5 QR code");
+            }
+        }
+        int size = version * 4 + 17;
+        boolean[][] modules = new boolean[size][size];
+        boolean[][] function = new boolean[size][size];
+
+        // Timing patterns, finder patterns and the alignment pattern
+        for (int i = 0; i < size; i++) {
+            setFunction(modules, function, 6, i, i % 2 == 0);
+            setFunction(modules, function, i, 6, i % 2 == 0);
+        }
+        drawFinder(modules, function, 3, 3);
+        drawFinder(modules, function, size - 4, 3);
+        drawFinder(modules, function, 3, size - 4);
+        if (version > 1) {
+            int center = size - 7;
+            for (int dy = -2; dy <= 2; dy++) {
+                for (int dx = -2; dx <= 2; dx++) {
+                    setFunction(modules, function, center + dx, center + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+                }
+            }
+        }
+
+        // Format information, for level L (01) and mask 0, with its BCH code
+        int format = 1 << 3;
+        int remainder = format;
+        for (int i = 0; i < 10; i++) {
+            remainder = (remainder << 1) ^ ((remainder >>> 9) * 0x537);
+        }
+        int formatBits = ((format << 10) | remainder) ^ 0x5412;
+        for (int i = 0; i <= 5; i++) {
+            setFunction(modules, function, 8, i, bit(formatBits, i));
+        }
+        setFunction(modules, function, 8, 7, bit(formatBits, 6));
+        setFunction(modules, function, 8, 8, bit(formatBits, 7));
+        setFunction(modules, function, 7, 8, bit(formatBits, 8));
+        for (int i = 9; i < 15; i++) {
+            setFunction(modules, function, 14 - i, 8, bit(formatBits, i));
+        }
+        for (int i = 0; i < 8; i++) {
+            setFunction(modules, function, size - 1 - i, 8, bit(formatBits, i));
+        }
+        for (int i = 8; i < 15; i++) {
+            setFunction(modules, function, 8, size - 15 + i, bit(formatBits, i));
+        }
+        setFunction(modules, function, 8, size - 8, true);  // Always dark
+
+        // Data: mode, length, bytes, terminator and padding, then error correction
+        int dataCodewords = QR_DATA_CODEWORDS[version - 1];
+        byte[] codewords = new byte[dataCodewords + QR_EC_CODEWORDS[version - 1]];
+        int bitLength = 0;
+        bitLength = appendBits(codewords, bitLength, 0x4, 4);
+        bitLength = appendBits(codewords, bitLength, bytes.length, 8);
+        for (byte b : bytes) {
+            bitLength = appendBits(codewords, bitLength, b & 0xFF, 8);
+        }
+        bitLength = appendBits(codewords, bitLength, 0, Math.min(4, dataCodewords * 8 - bitLength));
+        bitLength = (bitLength + 7) / 8 * 8;
+        for (int pad = 0xEC; bitLength < dataCodewords * 8; pad ^= 0xEC ^ 0x11) {
+            bitLength = appendBits(codewords, bitLength, pad, 8);
+        }
+        reedSolomon(codewords, dataCodewords, QR_EC_CODEWORDS[version - 1]);
+
+        // Place the codewords in the zigzag order, applying mask 0
+        int index = 0;
+        for (int right = size - 1; right >= 1; right -= 2) {
+            if (right == 6) {
+                right = 5;
+            }
+            for (int vertical = 0; vertical < size; vertical++) {
+                for (int j = 0; j < 2; j++) {
+                    int x = right - j;
+                    boolean upward = ((right + 1) & 2) == 0;
+                    int y = upward ? size - 1 - vertical : vertical;
+                    if (function[y][x]) {
+                        continue;
+                    }
+                    boolean dark = index < codewords.length * 8 && bit(codewords[index >>> 3], 7 - (index & 7));
+                    index++;
+                    modules[y][x] = dark ^ ((x + y) % 2 == 0);
+                }
+            }
+        }
+        return modules;
+    }
+
+    private static void drawFinder(boolean[][] modules, boolean[][] function, int centerX, int centerY) {
+        for (int dy = -4; dy <= 4; dy++) {
+            for (int dx = -4; dx <= 4; dx++) {
+                int x = centerX + dx;
+                int y = centerY + dy;
+                if (x >= 0 && x < modules.length && y >= 0 && y < modules.length) {
+                    int distance = Math.max(Math.abs(dx), Math.abs(dy));
+                    setFunction(modules, function, x, y, distance != 2 && distance != 4);
+                }
+            }
+        }
+    }
+
+    private static void setFunction(boolean[][] modules, boolean[][] function, int x, int y, boolean dark) {
+        modules[y][x] = dark;
+        function[y][x] = true;
+    }
+
+    private static boolean bit(int value, int index) {
+        return ((value >>> index) & 1) != 0;
+    }
+
+    private static int appendBits(byte[] buffer, int bitLength, int value, int count) {
+        for (int i = count - 1; i >= 0; i--, bitLength++) {
+            if (bit(value, i)) {
+                buffer[bitLength >>> 3] |= (byte) (0x80 >>> (bitLength & 7));
+            }
+        }
+        return bitLength;
+    }
+
+    /**
+     * Helper method to compute the Reed-Solomon error correction codewords over GF(256)
+     *
+     * @param codewords byte array holding the data codewords, followed by room for the error correction
+     * @param dataCount int number of data codewords
+     * @param ecCount int number of error correction codewords
+     */
+    private static void reedSolomon(byte[] codewords, int dataCount, int ecCount) {
+        // Generator polynomial: the product of (x - 2^i) for i from 0 to ecCount - 1
+        int[] divisor = new int[ecCount];
+        divisor[ecCount - 1] = 1;
+        int root = 1;
+        for (int i = 0; i < ecCount; i++) {
+            for (int j = 0; j < ecCount; j++) {
+                divisor[j] = gfMultiply(divisor[j], root);
+                if (j + 1 < ecCount) {
+                    divisor[j] ^= divisor[j + 1];
+                }
+            }
+            root = gfMultiply(root, 0x02);
+        }
+        int[] remainder = new int[ecCount];
+        for (int i = 0; i < dataCount; i++) {
+            int factor = (codewords[i] & 0xFF) ^ remainder[0];
+            System.arraycopy(remainder, 1, remainder, 0, ecCount - 1);
+            remainder[ecCount - 1] = 0;
+            for (int j = 0; j < ecCount; j++) {
+                remainder[j] ^= gfMultiply(divisor[j], factor);
+            }
+        }
+        for (int i = 0; i < ecCount; i++) {
+            codewords[dataCount + i] = (byte) remainder[i];
+        }
+    }
+
+    private static int gfMultiply(int x, int y) {
+        int z = 0;
+        for (int i = 7; i >= 0; i--) {
+            z = (z << 1) ^ ((z >>> 7) * 0x11D);
+            z ^= ((y >>> i) & 1) * x;
+        }
+        return z;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ Copyright (c) 2018, Vuzix Corporation
+ All rights reserved.
+
+ Redistribution and use in source and binary forms, with or without
+ modification, are permitted provided that the following conditions
+ are met:
+
+ Redistributions of source code must retain the above copyright
+ notice, this list of conditions and the following disclaimer.
+
+ Redistributions in binary form must reproduce the above copyright
+ notice, this list of conditions and the following disclaimer in the
+ documentation and/or other materials provided with the distribution.
+
+ Neither the name of Vuzix Corporation nor the names of
+ its contributors may be used to endorse or promote products derived
+ from this software without specific prior written permission.
+
+ THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+ OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+ OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vuzix.sample.barcode_from_image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for Code128ScanlineDecoder, using frames from SyntheticFrameGenerator. These run on the JVM
+ */
+public class Code128ScanlineDecoderTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int FRAMES = 300;
+
+    private final SyntheticFrameGenerator mGenerator = new SyntheticFrameGenerator(WIDTH, HEIGHT, 39);
+    private final Code128ScanlineDecoder mDecoder = new Code128ScanlineDecoder();
+
+    @Test
+    public void readsCleanFrames() {
+        SyntheticFrameGenerator.Options options = new SyntheticFrameGenerator.Options();
+        for (int i = 0; i < 50; i++) {
+            String text = mGenerator.randomText(SyntheticFrameGenerator.Symbology.CODE_128);
+            byte[] frame = mGenerator.render(SyntheticFrameGenerator.Symbology.CODE_128, text, options);
+            assertEquals(text, mDecoder.decode(frame, WIDTH, HEIGHT));
+        }
+    }
+
+    @Test
+    public void readsDigitsAndUpsideDownFrames() {
+        SyntheticFrameGenerator.Options options = new SyntheticFrameGenerator.Options();
+        options.rotationDegrees = 180;
+        byte[] frame = mGenerator.render(SyntheticFrameGenerator.Symbology.CODE_128, "0123456789", options);
+        assertEquals("0123456789", mDecoder.decode(frame, WIDTH, HEIGHT));
+    }
+
+    /**
+     * Rotated, blurred, noisy and glared frames may be left to the engine, but never misread
+     */
+    @Test
+    public void neverMisreadsHardFrames() {
+        int read = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            String text = mGenerator.randomText(SyntheticFrameGenerator.Symbology.CODE_128);
+            byte[] frame = mGenerator.render(SyntheticFrameGenerator.Symbology.CODE_128, text, mGenerator.randomOptions());
+            String decoded = mDecoder.decode(frame, WIDTH, HEIGHT);
+            if (decoded != null) {
+                assertEquals("Misread", text, decoded);
+                read++;
+            }
+        }
+        assertTrue("Only " + read + " of " + FRAMES + " frames read", read > FRAMES / 3);
+    }
+
+    @Test
+    public void findsNothingInBlankOrNoiseFrames() {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        for (int level = 0; level < 256; level += 15) {
+            Arrays.fill(frame, (byte) level);
+            assertNull(mDecoder.decode(frame, WIDTH, HEIGHT));
+        }
+        Random random = new Random(39);
+        for (int i = 0; i < FRAMES; i++) {
+            if (i % 2 == 0) {
+                random.nextBytes(frame);   // White noise
+            } else {
+                // Coarse noise, with runs as wide as bars
+                for (int x = 0; x < frame.length; ) {
+                    int run = 1 + random.nextInt(12);
+                    Arrays.fill(frame, x, Math.min(frame.length, x + run), (byte) random.nextInt(256));
+                    x += run;
+                }
+            }
+            assertNull("Misread noise frame " + i, mDecoder.decode(frame, WIDTH, HEIGHT));
+        }
+    }
+
+    @Test
+    public void findsNothingInUpcOrQrFrames() {
+        SyntheticFrameGenerator.Options options = new SyntheticFrameGenerator.Options();
+        for (SyntheticFrameGenerator.Symbology symbology : new SyntheticFrameGenerator.Symbology[]{
+                SyntheticFrameGenerator.Symbology.UPC_A, SyntheticFrameGenerator.Symbology.QR_CODE}) {
+            for (int i = 0; i < 20; i++) {
+                byte[] frame = mGenerator.render(symbology, mGenerator.randomText(symbology), options);
+                assertNull(symbology.name(), mDecoder.decode(frame, WIDTH, HEIGHT));
+            }
+        }
+    }
+
+    @Test
+    public void onlyReadsWithinTheRegion() {
+        SyntheticFrameGenerator.Options options = new SyntheticFrameGenerator.Options();
+        options.size = 0.4f;
+        options.offsetY = -0.3f;   // In the top third
+        byte[] frame = mGenerator.render(SyntheticFrameGenerator.Symbology.CODE_128, "OUTSIDE-1", options);
+        assertEquals("OUTSIDE-1", mDecoder.decode(frame, WIDTH, HEIGHT, 0, 0, WIDTH, HEIGHT / 3));
+        assertNull(mDecoder.decode(frame, WIDTH, HEIGHT, WIDTH / 4, HEIGHT / 3, WIDTH / 2, HEIGHT / 3));
+
+        options.offsetY = 0;
+        options.size = 0.45f;
+        frame = mGenerator.render(SyntheticFrameGenerator.Symbology.CODE_128, "INSIDE-2", options);
+        assertEquals("INSIDE-2", mDecoder.decode(frame, WIDTH, HEIGHT, WIDTH / 4, HEIGHT / 3, WIDTH / 2, HEIGHT / 3));
+    }
+}
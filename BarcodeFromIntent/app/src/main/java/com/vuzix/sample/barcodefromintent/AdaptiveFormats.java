@@ -0,0 +1,183 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import com.vuzix.sdk.barcode.BarcodeType2;
+import com.vuzix.sdk.barcode.ScanResult2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chooses the barcode formats to look for in each frame, based on which formats were actually read.
+ *
+ * The engine spends time on every format it is asked to look for, even those that never appear. Once
+ * some formats have been read, most frames look only for those, most often read first. Every Nth
+ * frame still looks for all requested formats, so a new kind of barcode is found within a few frames
+ * and is then looked for in every frame. A format that has not been read for a while is dropped again.
+ *
+ * The statistics are kept for the life of the object, across requests, and only used on one thread.
+ */
+class AdaptiveFormats {
+    // While narrowed, every Nth frame looks for all requested formats
+    private final static int PROBE_INTERVAL = 8;
+    // A format stays in the narrowed set until it has not been read for this many frames
+    private final static int KEEP_FRAMES = 300;
+    // Hit counts are halved once their total reaches this, so recent reads count the most
+    private final static int MAX_TOTAL_HITS = 64;
+
+    private final int[] mHits = new int[BarcodeType2.values().length];
+    private final long[] mLastHitFrame = new long[BarcodeType2.values().length];
+    private int mTotalHits;
+    private long mFrame;
+    private BarcodeType2[] mRequested = new BarcodeType2[0];
+    private BarcodeType2[] mNarrowed;   // Null when every requested format is needed
+    private boolean mNarrowedValid;
+
+    AdaptiveFormats() {
+        Arrays.fill(mLastHitFrame, Long.MIN_VALUE / 2);
+    }
+
+    /**
+     * Sets the formats the caller asked for. The narrowed sets only ever hold some of these
+     *
+     * @param formats array of BarcodeType2 requested
+     */
+    void setRequested(BarcodeType2[] formats) {
+        if (!Arrays.equals(formats, mRequested)) {
+            mRequested = formats.clone();
+            mNarrowedValid = false;
+        }
+    }
+
+    /**
+     * Chooses the formats for the next frame. The same array is returned while the choice is
+     * unchanged, so the caller only needs to reconfigure the scanner when it gets a different array
+     *
+     * @return array of BarcodeType2 to look for in the next frame
+     */
+    BarcodeType2[] next() {
+        mFrame++;
+        if (mFrame % PROBE_INTERVAL == 0) {
+            return mRequested;
+        }
+        if (!mNarrowedValid || (mNarrowed != null && isStale())) {
+            mNarrowed = narrow();
+            mNarrowedValid = true;
+        }
+        return (mNarrowed != null) ? mNarrowed : mRequested;
+    }
+
+    /**
+     * @param formats array of BarcodeType2 returned by next()
+     * @return True if the array holds every requested format
+     */
+    boolean isAll(BarcodeType2[] formats) {
+        return formats == mRequested;
+    }
+
+    /**
+     * Records the formats read in the last frame
+     *
+     * @param results array of ScanResult2 from the frame. May be null or empty
+     */
+    void record(ScanResult2[] results) {
+        if (results == null) {
+            return;
+        }
+        for (ScanResult2 result : results) {
+            BarcodeType2 format = result.getFormat();
+            if (format == null) {
+                continue;
+            }
+            int index = format.ordinal();
+            if (mFrame - mLastHitFrame[index] > KEEP_FRAMES || !contains(mNarrowed, format)) {
+                mNarrowedValid = false;   // A format the narrowed set left out, or was about to drop
+            }
+            mLastHitFrame[index] = mFrame;
+            mHits[index]++;
+            if (++mTotalHits >= MAX_TOTAL_HITS) {
+                mTotalHits = 0;
+                for (int i = 0; i < mHits.length; i++) {
+                    mHits[i] /= 2;
+                    mTotalHits += mHits[i];
+                }
+                mNarrowedValid = false;   // The order may change
+            }
+        }
+    }
+
+    /**
+     * Helper method to check whether a format in the narrowed set should now be dropped
+     */
+    private boolean isStale() {
+        for (BarcodeType2 format : mNarrowed) {
+            if (mFrame - mLastHitFrame[format.ordinal()] > KEEP_FRAMES) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method to choose the requested formats read recently, most often read first
+     *
+     * @return array of BarcodeType2, or null if no format can be left out
+     */
+    private BarcodeType2[] narrow() {
+        List<BarcodeType2> recent = new ArrayList<>();
+        for (BarcodeType2 format : mRequested) {
+            if (mFrame - mLastHitFrame[format.ordinal()] <= KEEP_FRAMES) {
+                recent.add(format);
+            }
+        }
+        if (recent.isEmpty() || recent.size() == mRequested.length) {
+            return null;
+        }
+        recent.sort((a, b) -> Integer.compare(mHits[b.ordinal()], mHits[a.ordinal()]));
+        return recent.toArray(new BarcodeType2[0]);
+    }
+
+    private static boolean contains(BarcodeType2[] formats, BarcodeType2 format) {
+        if (formats == null) {
+            return true;   // Not narrowed, so every requested format is included
+        }
+        for (BarcodeType2 each : formats) {
+            if (each == format) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
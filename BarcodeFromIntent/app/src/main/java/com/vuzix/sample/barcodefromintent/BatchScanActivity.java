@@ -0,0 +1,269 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.Manifest;
+import android.app.Activity;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.view.KeyEvent;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.vuzix.sdk.barcode.BarcodeType2;
+import com.vuzix.sdk.barcode.ScanResult2;
+import com.vuzix.sdk.barcode.ScannerIntent;
+
+import java.util.LinkedHashMap;
+
+/**
+ * An activity that scans many barcodes for a single intent.
+ *
+ * Any app can start this with ACTION_BATCH_SCAN. It keeps scanning until the requested number of
+ * distinct barcodes is found, the timeout expires, or the user presses a key to stop. All distinct
+ * results are then returned together, in extras of platform types so any app can read them:
+ *
+ *   RESULT_EXTRA_TEXTS       String, the text of every result joined together
+ *   RESULT_EXTRA_TEXT_ENDS   int[], the end index in RESULT_EXTRA_TEXTS of each result's text
+ *   RESULT_EXTRA_FORMATS     String[], the BarcodeType2 name of each result, or null if not known
+ *   RESULT_EXTRA_POINT_ENDS  int[], the end index in RESULT_EXTRA_POINTS of each result's points
+ *   RESULT_EXTRA_POINTS      int[], x and y of every result point, one after another
+ *
+ * Within this app, PackedScanResults.fromIntent() reads them back.
+ */
+public class BatchScanActivity extends Activity {
+    public static final String ACTION_BATCH_SCAN = "com.vuzix.sample.barcodefromintent.action.BATCH_SCAN";
+    public static final String EXTRA_MAX_COUNT = "max_count";
+    public static final String EXTRA_TIMEOUT_MS = "timeout_ms";
+    public static final String RESULT_EXTRA_TEXTS = "texts";
+    public static final String RESULT_EXTRA_TEXT_ENDS = "text_ends";
+    public static final String RESULT_EXTRA_FORMATS = "formats";
+    public static final String RESULT_EXTRA_POINT_ENDS = "point_ends";
+    public static final String RESULT_EXTRA_POINTS = "points";
+
+    private static final int REQUEST_CODE_PERMISSIONS = 90003;
+    private static final int DEFAULT_MAX_COUNT = 10;
+    private static final long DEFAULT_TIMEOUT_MS = 30000;
+
+    private final LinkedHashMap<String, ScanResult2> mResults = new LinkedHashMap<>();
+    private final Handler mUiThreadHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mTimeout = this::finishWithResults;
+    private TextView mCountView;
+    private String[] mBarcodeTypes;
+    private int mCameraId;
+    private int mMaxCount;
+    private long mTimeoutMillis;
+    private ScanService mScanService;
+    private boolean mBound;
+
+    private final ServiceConnection mScanServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            mScanService = ((ScanService.LocalBinder) service).getService();
+            startScan();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mScanService = null;
+        }
+    };
+
+    /**
+     * Reads the request from the intent, and sets up the User Interface
+     *
+     * @param savedInstanceState - unused and passed unchanged to the superclass
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_batch_scan);
+        mCountView = (TextView) findViewById(R.id.batch_count);
+
+        Intent intent = getIntent();
+        mBarcodeTypes = intent.getStringArrayExtra(ScannerIntent.EXTRA_BARCODE2_TYPES);
+        if (mBarcodeTypes == null) {
+            // Not limited by the caller, so look for every type
+            BarcodeType2[] allTypes = BarcodeType2.values();
+            mBarcodeTypes = new String[allTypes.length];
+            for (int i = 0; i < allTypes.length; i++) {
+                mBarcodeTypes[i] = allTypes[i].name();
+            }
+        }
+        mCameraId = intent.getIntExtra(ScannerIntent.EXTRA_CAMERA_ID, 0);
+        mMaxCount = intent.getIntExtra(EXTRA_MAX_COUNT, DEFAULT_MAX_COUNT);
+        mTimeoutMillis = intent.getLongExtra(EXTRA_TIMEOUT_MS, DEFAULT_TIMEOUT_MS);
+        updateCount();
+
+        if (checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.CAMERA}, REQUEST_CODE_PERMISSIONS);
+        }
+    }
+
+    /**
+     * Binds to the scan service, which starts the scan
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mBound = bindService(new Intent(this, ScanService.class), mScanServiceConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    /**
+     * Stops scanning while the activity is not visible. The scan resumes if it becomes visible again
+     */
+    @Override
+    protected void onStop() {
+        mUiThreadHandler.removeCallbacks(mTimeout);
+        if (mScanService != null) {
+            mScanService.stopScan();
+            mScanService = null;
+        }
+        if (mBound) {
+            unbindService(mScanServiceConnection);
+            mBound = false;
+        }
+        super.onStop();
+    }
+
+    /**
+     * Any button other than back stops the batch and returns the results found so far
+     *
+     * @param keycode The keycode that is pressed/released
+     * @param event - The key event
+     * @return True if handled, false otherwise
+     */
+    @Override
+    public boolean onKeyDown(int keycode, KeyEvent event) {
+        switch (keycode) {
+            case KeyEvent.KEYCODE_DPAD_RIGHT:
+            case KeyEvent.KEYCODE_DPAD_LEFT:
+            case KeyEvent.KEYCODE_DPAD_CENTER:
+            case KeyEvent.KEYCODE_ENTER:
+                finishWithResults();
+                return true;
+        }
+        return super.onKeyDown(keycode, event);
+    }
+
+    /**
+     * Handle permissions response. Either cancels the batch, or starts the scan
+     *
+     * @param requestCode - unique value to identify the request
+     * @param permissions - specific permission being granted/denied
+     * @param grantResults - results for each permission
+     */
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        if (requestCode == REQUEST_CODE_PERMISSIONS) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                startScan();
+            } else {
+                Toast.makeText(this, R.string.no_permission, Toast.LENGTH_LONG).show();
+                setResult(RESULT_CANCELED);
+                finish();
+            }
+            return;
+        }
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    }
+
+    /**
+     * Starts the scan once the service is bound and permission is granted
+     */
+    private void startScan() {
+        if (mScanService == null || checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        mUiThreadHandler.removeCallbacks(mTimeout);
+        mUiThreadHandler.postDelayed(mTimeout, mTimeoutMillis);
+        mScanService.startScan(mBarcodeTypes, mCameraId, new ScanService.Callback() {
+            @Override
+            public void onScanResult(ScanResult2[] results, float decodeMillis) {
+                onBatchScanResult(results);
+            }
+
+            @Override
+            public void onScanError() {
+                finishWithResults();
+            }
+        });
+    }
+
+    /**
+     * Adds the results of one frame to the batch, and ends the batch once enough are found
+     *
+     * @param results array of ScanResult2 found in the frame
+     */
+    private void onBatchScanResult(ScanResult2[] results) {
+        if (isFinishing()) {
+            return;
+        }
+        for (ScanResult2 result : results) {
+            if (result.getText() != null && !mResults.containsKey(result.getText())) {
+                mResults.put(result.getText(), result);
+            }
+        }
+        updateCount();
+        if (mResults.size() >= mMaxCount) {
+            finishWithResults();
+        }
+    }
+
+    /**
+     * Shows the number of distinct barcodes found so far
+     */
+    private void updateCount() {
+        mCountView.setText(getString(R.string.batch_count, mResults.size(), mMaxCount));
+    }
+
+    /**
+     * Returns all distinct results to the caller, packed into a few flat extras
+     */
+    private void finishWithResults() {
+        if (isFinishing()) {
+            return;
+        }
+        Intent data = new Intent();
+        new PackedScanResults(mResults.values()).putExtras(data);
+        setResult(mResults.isEmpty() ? RESULT_CANCELED : RESULT_OK, data);
+        finish();
+    }
+}
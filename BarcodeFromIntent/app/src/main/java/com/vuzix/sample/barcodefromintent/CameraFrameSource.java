@@ -0,0 +1,253 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+/**
+ * A FrameSource delivering the Y plane of a camera's preview frames
+ */
+class CameraFrameSource implements FrameSource {
+    private final static String TAG = "barcodeSample";
+
+    private final Context mContext;
+    private final String mCameraId;
+    private final Handler mHandler;
+    private Listener mListener;
+    private boolean mOpening;
+    private CameraDevice mCameraDevice;
+    private CameraCaptureSession mCaptureSession;
+    private ImageReader mImageReader;
+    private byte[] mFrameData;
+
+    /**
+     * @param context Context used to open the camera
+     * @param cameraId String id of the camera, from CameraManager.getCameraIdList()
+     * @param handler Handler on whose thread the camera runs and frames are delivered
+     */
+    CameraFrameSource(Context context, String cameraId, Handler handler) {
+        mContext = context;
+        mCameraId = cameraId;
+        mHandler = handler;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpening || mCameraDevice != null;
+    }
+
+    /**
+     * Opens the camera, unless it is already open
+     */
+    @Override
+    public void open() {
+        if (isOpen()) {
+            return;  // Already warm
+        }
+        if (mContext.checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            reportError();
+            return;
+        }
+        CameraManager cameraManager = (CameraManager) mContext.getSystemService(Context.CAMERA_SERVICE);
+        try {
+            mOpening = true;
+            cameraManager.openCamera(mCameraId, new CameraDevice.StateCallback() {
+                @Override
+                public void onOpened(CameraDevice camera) {
+                    if (!mOpening) {
+                        camera.close();  // Closed while opening
+                        return;
+                    }
+                    mOpening = false;
+                    mCameraDevice = camera;
+                    createCaptureSession();
+                }
+
+                @Override
+                public void onDisconnected(CameraDevice camera) {
+                    // Such as when another app takes the camera. The scan can't go on without it
+                    camera.close();
+                    if (camera == mCameraDevice || mOpening) {
+                        reportError();
+                    }
+                }
+
+                @Override
+                public void onError(CameraDevice camera, int error) {
+                    camera.close();
+                    if (camera == mCameraDevice || mOpening) {
+                        reportError();
+                    }
+                }
+            }, mHandler);
+        } catch (CameraAccessException | SecurityException e) {
+            Log.e(TAG, "Unable to open camera " + mCameraId, e);
+            reportError();
+        }
+    }
+
+    /**
+     * Starts a repeating request delivering frames to the image reader
+     */
+    private void createCaptureSession() {
+        // The frame size of the active scan profile. A change applies the next time the camera opens
+        ScanProfiles.Profile profile = ScanProfiles.current(mContext).getActive();
+        mImageReader = ImageReader.newInstance(profile.width, profile.height, ImageFormat.YUV_420_888, 2);
+        mImageReader.setOnImageAvailableListener(this::handleFrame, mHandler);
+        try {
+            CaptureRequest.Builder builder = mCameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            builder.addTarget(mImageReader.getSurface());
+            mCameraDevice.createCaptureSession(Collections.singletonList(mImageReader.getSurface()), new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(CameraCaptureSession session) {
+                    if (mCameraDevice == null) {
+                        session.close();
+                        return;
+                    }
+                    mCaptureSession = session;
+                    try {
+                        session.setRepeatingRequest(builder.build(), null, mHandler);
+                    } catch (CameraAccessException e) {
+                        Log.e(TAG, "Unable to start capture", e);
+                        reportError();
+                    }
+                }
+
+                @Override
+                public void onConfigureFailed(CameraCaptureSession session) {
+                    reportError();
+                }
+            }, mHandler);
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Unable to create capture session", e);
+            reportError();
+        }
+    }
+
+    /**
+     * Passes each frame to the listener
+     *
+     * @param reader - The image reader
+     */
+    private void handleFrame(ImageReader reader) {
+        Image image = reader.acquireLatestImage();
+        if (image == null) {
+            return;
+        }
+        try {
+            if (mListener == null) {
+                return;  // Idle. Frames are dropped but the camera stays warm
+            }
+            mListener.onFrame(copyLuma(image), image.getWidth(), image.getHeight());
+        } finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Copies the Y plane of the image into a reused buffer, removing any row padding
+     *
+     * @param image - The image to copy
+     * @return byte array holding the luminance of the image
+     */
+    private byte[] copyLuma(Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (mFrameData == null || mFrameData.length < width * height * 3 / 2) {
+            // Sized for a full YUV 4:2:0 frame, although only the Y plane is filled in
+            mFrameData = new byte[width * height * 3 / 2];
+        }
+        Image.Plane plane = image.getPlanes()[0];
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        if (rowStride == width) {
+            buffer.get(mFrameData, 0, width * height);
+        } else {
+            for (int row = 0; row < height; row++) {
+                buffer.position(row * rowStride);
+                buffer.get(mFrameData, row * width, width);
+            }
+        }
+        return mFrameData;
+    }
+
+    /**
+     * Utility to close the camera and tell the listener that it failed
+     */
+    private void reportError() {
+        close();
+        if (mListener != null) {
+            mListener.onFrameSourceError();
+        }
+    }
+
+    /**
+     * Closes the camera
+     */
+    @Override
+    public void close() {
+        mOpening = false;
+        if (mCaptureSession != null) {
+            mCaptureSession.close();
+            mCaptureSession = null;
+        }
+        if (mCameraDevice != null) {
+            mCameraDevice.close();
+            mCameraDevice = null;
+        }
+        if (mImageReader != null) {
+            mImageReader.close();
+            mImageReader = null;
+        }
+    }
+}
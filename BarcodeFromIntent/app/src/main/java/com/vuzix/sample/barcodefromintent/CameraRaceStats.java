@@ -0,0 +1,140 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Remembers which camera wins races between the cameras, separately for each scanning context.
+ *
+ * The context is any string the caller uses to tell situations apart, such as the barcode types
+ * requested. Once one camera clearly wins in a context, the other camera is only raced now and then
+ * to confirm that it still loses, which saves opening a second camera for most scans.
+ */
+class CameraRaceStats {
+    private final static String PREFS_NAME = "camera_race_stats";
+    // Races needed in a context before a camera may be preferred
+    private final static int MIN_RACES = 10;
+    // Share of the races a camera must win to be preferred
+    private final static float PREFERRED_SHARE = 0.8f;
+    // While a camera is preferred, every Nth request still races all cameras
+    private final static int RACE_INTERVAL = 5;
+
+    private final SharedPreferences mPrefs;
+
+    /**
+     * @param context Context used to store the statistics
+     */
+    CameraRaceStats(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Records the camera that read a barcode first
+     *
+     * @param raceContext String context of the race
+     * @param cameraIndex int index of the winning camera
+     */
+    synchronized void recordWin(String raceContext, int cameraIndex) {
+        String key = winsKey(raceContext, cameraIndex);
+        mPrefs.edit()
+                .putInt(key, mPrefs.getInt(key, 0) + 1)
+                .putInt(racesKey(raceContext), mPrefs.getInt(racesKey(raceContext), 0) + 1)
+                .apply();
+    }
+
+    /**
+     * Decides whether a request in this context needs to race the cameras
+     *
+     * @param raceContext String context of the request
+     * @param cameraCount int number of cameras that could race
+     * @return int index of the only camera to use, or -1 to race all of them
+     */
+    synchronized int chooseCamera(String raceContext, int cameraCount) {
+        int races = mPrefs.getInt(racesKey(raceContext), 0);
+        if (races < MIN_RACES) {
+            return -1;
+        }
+        int requests = mPrefs.getInt(requestsKey(raceContext), 0) + 1;
+        mPrefs.edit().putInt(requestsKey(raceContext), requests).apply();
+        if (requests % RACE_INTERVAL == 0) {
+            return -1;  // Keep learning, in case things have changed
+        }
+        for (int i = 0; i < cameraCount; i++) {
+            if (mPrefs.getInt(winsKey(raceContext, i), 0) >= races * PREFERRED_SHARE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gives the order in which to open the cameras, so the one most likely to win starts first
+     *
+     * @param raceContext String context of the request
+     * @param cameraCount int number of cameras
+     * @return int array of camera indexes, most wins first
+     */
+    synchronized int[] rankCameras(String raceContext, int cameraCount) {
+        int[] order = new int[cameraCount];
+        int[] wins = new int[cameraCount];
+        for (int i = 0; i < cameraCount; i++) {
+            order[i] = i;
+            wins[i] = mPrefs.getInt(winsKey(raceContext, i), 0);
+        }
+        // Insertion sort. There are only ever a couple of cameras
+        for (int i = 1; i < cameraCount; i++) {
+            int camera = order[i];
+            int j = i - 1;
+            while (j >= 0 && wins[order[j]] < wins[camera]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = camera;
+        }
+        return order;
+    }
+
+    private static String winsKey(String raceContext, int cameraIndex) {
+        return raceContext + "/wins/" + cameraIndex;
+    }
+
+    private static String racesKey(String raceContext) {
+        return raceContext + "/races";
+    }
+
+    private static String requestsKey(String raceContext) {
+        return raceContext + "/requests";
+    }
+}
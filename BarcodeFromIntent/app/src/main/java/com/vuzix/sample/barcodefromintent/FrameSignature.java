@@ -0,0 +1,117 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+/**
+ * A tiny summary of a luminance frame, used to tell whether two frames show the same thing.
+ *
+ * The frame is divided into a 16 x 9 grid, and the average luminance of each block is kept. Only
+ * every SAMPLE_STEP-th pixel of every SAMPLE_STEP-th row is read, so computing a signature costs a
+ * small fraction of a scan.
+ *
+ * Signatures are compared block by block, so a barcode that appears in a corner of an otherwise
+ * still frame counts as a change, rather than being averaged away over the whole frame.
+ */
+class FrameSignature {
+    private final static int COLUMNS = 16;
+    private final static int ROWS = 9;
+    private final static int SAMPLE_STEP = 4;
+
+    private final int[] mBlocks = new int[COLUMNS * ROWS];
+    private boolean mValid;
+
+    /**
+     * Replaces this signature with that of a frame
+     *
+     * @param data byte array holding the luminance of the frame, without row padding
+     * @param width int width of the frame
+     * @param height int height of the frame
+     */
+    void compute(byte[] data, int width, int height) {
+        int blockWidth = width / COLUMNS;
+        int blockHeight = height / ROWS;
+        mValid = blockWidth > 0 && blockHeight > 0;
+        if (!mValid) {
+            return;
+        }
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int sum = 0;
+                int count = 0;
+                int left = column * blockWidth;
+                for (int y = row * blockHeight; y < (row + 1) * blockHeight; y += SAMPLE_STEP) {
+                    int offset = y * width;
+                    for (int x = left; x < left + blockWidth; x += SAMPLE_STEP) {
+                        sum += data[offset + x] & 0xFF;
+                        count++;
+                    }
+                }
+                mBlocks[row * COLUMNS + column] = sum / count;
+            }
+        }
+    }
+
+    /**
+     * Makes this signature a copy of another
+     *
+     * @param other FrameSignature to copy
+     */
+    void copyFrom(FrameSignature other) {
+        System.arraycopy(other.mBlocks, 0, mBlocks, 0, mBlocks.length);
+        mValid = other.mValid;
+    }
+
+    /**
+     * Forgets the frame, so it matches nothing until computed again
+     */
+    void clear() {
+        mValid = false;
+    }
+
+    /**
+     * Compares two signatures by the block that changed the most
+     *
+     * @param other FrameSignature to compare with
+     * @return int largest difference of any one block, from 0 to 255. Integer.MAX_VALUE if either is empty
+     */
+    int maxDifference(FrameSignature other) {
+        if (!mValid || !other.mValid) {
+            return Integer.MAX_VALUE;
+        }
+        int max = 0;
+        for (int i = 0; i < mBlocks.length; i++) {
+            max = Math.max(max, Math.abs(mBlocks[i] - other.mBlocks[i]));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+/**
+ * A source of luminance frames to scan.
+ *
+ * The scanning code only sees this interface, so it does not care whether frames come from one
+ * camera, another camera, or somewhere else entirely. All methods must be called on the thread of
+ * the Handler the source was created with, and the listener is called on that same thread.
+ */
+interface FrameSource {
+
+    /**
+     * Define the interface receiving frames from the source
+     */
+    interface Listener {
+        /**
+         * Called for every frame while the source is open
+         *
+         * @param data byte array holding the luminance of the frame. Only valid until this returns
+         * @param width int width of the frame
+         * @param height int height of the frame
+         */
+        void onFrame(byte[] data, int width, int height);
+
+        /**
+         * Called if the source fails, or its camera is disconnected. The source is closed
+         */
+        void onFrameSourceError();
+    }
+
+    /**
+     * Starts delivering frames, unless the source is already open
+     */
+    void open();
+
+    /**
+     * Stops delivering frames and releases the source
+     */
+    void close();
+
+    /**
+     * @return True if the source is open or opening
+     */
+    boolean isOpen();
+
+    /**
+     * Sets where frames are delivered. Frames arriving with no listener are dropped
+     *
+     * @param listener Listener to receive frames, or null
+     */
+    void setListener(Listener listener);
+}
@@ -0,0 +1,510 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import java.util.Calendar;
+
+/**
+ * Parses GS1 element strings, as found in GS1-128, GS1 DataMatrix and GS1 QR Code barcodes, into
+ * their Application Identifiers (AIs) and values.
+ *
+ * The parser reads the scanned text or bytes in a single pass, and records where each value starts
+ * and ends in a reusable Result, so parsing a barcode creates no objects. Values are decoded from the
+ * payload only when asked for, as numbers, dates or decimals such as weights.
+ *
+ * Elements are separated by FNC1, which scanners send as the GS character (0x1D). A leading FNC1 or
+ * AIM symbology identifier such as "]C1" is skipped. The human readable form, with each AI in
+ * parentheses, is only for display: character set 82 allows parentheses in values, so it cannot be
+ * parsed back reliably.
+ */
+final class Gs1Parser {
+    static final char GS = 0x1D;                 // FNC1 as sent by the scanner
+    private final static int MAX_VALUE_LENGTH = 90;
+    private final static String SET_82_SYMBOLS = "!\"%&'()*+,-./:;<=>?_";
+    private final static double[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+
+    private final int mCurrentYear;
+
+    /**
+     * The elements of one GS1 barcode. Create one and pass it to every parse() call
+     */
+    static final class Result {
+        static final int MAX_ELEMENTS = 32;
+
+        private final int[] mAis = new int[MAX_ELEMENTS];
+        private final int[] mStarts = new int[MAX_ELEMENTS];
+        private final int[] mEnds = new int[MAX_ELEMENTS];
+        private final int[] mAiLengths = new int[MAX_ELEMENTS];
+        private int mCount;
+        private CharSequence mText;   // Exactly one of mText and mBytes is set after parsing
+        private byte[] mBytes;
+        private int mCurrentYear;
+
+        /**
+         * @return int number of elements found
+         */
+        int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @param index int element index
+         * @return int Application Identifier of the element, such as 17 or 3103
+         */
+        int getAi(int index) {
+            return mAis[index];
+        }
+
+        /**
+         * @param ai int Application Identifier to look for
+         * @return int index of the first element with this AI, or -1 if there is none
+         */
+        int indexOf(int ai) {
+            for (int i = 0; i < mCount; i++) {
+                if (mAis[i] == ai) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @param index int element index
+         * @return int length of the value
+         */
+        int getLength(int index) {
+            return mEnds[index] - mStarts[index];
+        }
+
+        /**
+         * @param index int element index
+         * @param offset int position within the value
+         * @return char at that position of the value
+         */
+        char charAt(int index, int offset) {
+            return at(mStarts[index] + offset);
+        }
+
+        /**
+         * Utility to read a numeric value, such as a GTIN or a count
+         *
+         * @param index int element index
+         * @return long value, or -1 if it is not all digits or has more than 18 of them
+         */
+        long getLong(int index) {
+            return digits(mStarts[index], mEnds[index]);
+        }
+
+        /**
+         * Utility to read a value with an implied decimal point, such as a weight. The last digit of
+         * the AI is the number of decimal places, so "3103" with "001250" is 1.250
+         *
+         * @param index int element index
+         * @return double value, or NaN if this AI does not hold a decimal or the value is not valid
+         */
+        double getDecimal(int index) {
+            int ai = mAis[index];
+            int start = mStarts[index];
+            if (mAiLengths[index] != 4 || !hasDecimalPoint(ai / 10)) {
+                return Double.NaN;
+            }
+            if (ai / 10 == 391 || ai / 10 == 393) {
+                start += 3;   // The value follows an ISO 4217 currency code
+            }
+            long value = digits(start, mEnds[index]);
+            if (value < 0) {
+                return Double.NaN;
+            }
+            return value / POWERS_OF_TEN[ai % 10];
+        }
+
+        /**
+         * Utility to read a YYMMDD date, such as an expiry date. A day of 00 means the last day of
+         * the month. The century is chosen as the GS1 specification describes, so the date is
+         * within 49 years in the past or 50 years in the future
+         *
+         * @param index int element index
+         * @return int date as YYYYMMDD, such as 20260531, or -1 if it is not a valid date
+         */
+        int getDate(int index) {
+            int start = mStarts[index];
+            if (mEnds[index] - start < 6) {
+                return -1;
+            }
+            int yy = (int) digits(start, start + 2);
+            int month = (int) digits(start + 2, start + 4);
+            int day = (int) digits(start + 4, start + 6);
+            if (yy < 0 || month < 1 || month > 12 || day < 0) {
+                return -1;
+            }
+            int difference = yy - mCurrentYear % 100;
+            int year = mCurrentYear - mCurrentYear % 100 + yy;
+            if (difference >= 51) {
+                year -= 100;
+            } else if (difference <= -50) {
+                year += 100;
+            }
+            int daysInMonth = daysInMonth(year, month);
+            if (day == 0) {
+                day = daysInMonth;
+            } else if (day > daysInMonth) {
+                return -1;
+            }
+            return year * 10000 + month * 100 + day;
+        }
+
+        /**
+         * Utility to compare a value to some text without creating a String
+         *
+         * @param index int element index
+         * @param text CharSequence to compare with
+         * @return True if the value is the same as the text
+         */
+        boolean valueEquals(int index, CharSequence text) {
+            int start = mStarts[index];
+            int length = mEnds[index] - start;
+            if (length != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (at(start + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Utility to append a value to a StringBuilder, such as one that is reused for display
+         *
+         * @param index int element index
+         * @param out StringBuilder to append to
+         */
+        void appendValue(int index, StringBuilder out) {
+            for (int i = mStarts[index]; i < mEnds[index]; i++) {
+                out.append(at(i));
+            }
+        }
+
+        /**
+         * Utility to append all elements in the human readable form, such as "(01)09501101530003(17)260531".
+         * This is for display only. A value may itself hold parentheses, so it is not parsed back
+         *
+         * @param out StringBuilder to append to
+         */
+        void appendHumanReadable(StringBuilder out) {
+            for (int i = 0; i < mCount; i++) {
+                out.append('(');
+                appendAi(i, out);
+                out.append(')');
+                appendValue(i, out);
+            }
+        }
+
+        /**
+         * Utility to append all elements as a GS1 element string, with FNC1 sent as GS after each
+         * value that does not have a predefined length. Parsing the output gives the same elements
+         *
+         * @param out StringBuilder to append to
+         */
+        void appendElementString(StringBuilder out) {
+            for (int i = 0; i < mCount; i++) {
+                appendAi(i, out);
+                appendValue(i, out);
+                int prefix = mAis[i] / (int) POWERS_OF_TEN[mAiLengths[i] - 2];
+                if (i < mCount - 1 && predefinedLength(prefix) == 0) {
+                    out.append(GS);
+                }
+            }
+        }
+
+        private void appendAi(int index, StringBuilder out) {
+            int ai = mAis[index];
+            for (int digit = mAiLengths[index] - 1; digit >= 0; digit--) {
+                out.append((char) ('0' + (ai / (int) POWERS_OF_TEN[digit]) % 10));
+            }
+        }
+
+        private char at(int position) {
+            return (mText != null) ? mText.charAt(position) : (char) (mBytes[position] & 0xFF);
+        }
+
+        private long digits(int start, int end) {
+            if (end <= start || end - start > 18) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = at(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private void reset(CharSequence text, byte[] bytes, int currentYear) {
+            mText = text;
+            mBytes = bytes;
+            mCount = 0;
+            mCurrentYear = currentYear;
+        }
+    }
+
+    /**
+     * Creates a parser that reads dates relative to the current year
+     */
+    Gs1Parser() {
+        this(Calendar.getInstance().get(Calendar.YEAR));
+    }
+
+    /**
+     * Creates a parser that reads dates relative to the given year
+     *
+     * @param currentYear int year, such as 2026, used to choose the century of dates
+     */
+    Gs1Parser(int currentYear) {
+        mCurrentYear = currentYear;
+    }
+
+    /**
+     * Utility to check whether a payload is marked as GS1, by a leading FNC1 or by the AIM symbology
+     * identifier of GS1-128 (]C1), GS1 DataMatrix (]d2) or GS1 QR Code (]Q3). Check this before
+     * parsing scanner output, since unmarked payloads such as EAN-13 "4006381333931" or Code 128
+     * "21ABC" also look like element strings
+     *
+     * @param text CharSequence text of the barcode
+     * @return True if the text is marked as a GS1 element string
+     */
+    static boolean isMarked(CharSequence text) {
+        if (text.length() > 0 && text.charAt(0) == GS) {
+            return true;
+        }
+        if (text.length() < 3 || text.charAt(0) != ']') {
+            return false;
+        }
+        char code = text.charAt(1);
+        char modifier = text.charAt(2);
+        return (code == 'C' && modifier == '1') || (code == 'd' && modifier == '2') || (code == 'Q' && modifier == '3');
+    }
+
+    /**
+     * Parses the text of a barcode
+     *
+     * @param text CharSequence text of the barcode, such as from ScanResult2.getText()
+     * @param result Result to fill. Its values refer to the text, so keep the text while using them
+     * @return True if the whole text is a valid GS1 element string
+     */
+    boolean parse(CharSequence text, Result result) {
+        result.reset(text, null, mCurrentYear);
+        return parse(result, 0, text.length());
+    }
+
+    /**
+     * Parses the raw bytes of a barcode
+     *
+     * @param data byte array holding the payload
+     * @param offset int start of the payload in data
+     * @param length int length of the payload
+     * @param result Result to fill. Its values refer to the data, so keep it unchanged while using them
+     * @return True if the whole payload is a valid GS1 element string
+     */
+    boolean parse(byte[] data, int offset, int length, Result result) {
+        result.reset(null, data, mCurrentYear);
+        return parse(result, offset, offset + length);
+    }
+
+    /**
+     * Helper method to parse the payload between start and end, which the result already refers to
+     */
+    private static boolean parse(Result result, int start, int end) {
+        int position = skipPrefix(result, start, end);
+        while (position < end) {
+            if (result.mCount == Result.MAX_ELEMENTS) {
+                return false;
+            }
+            // Read the AI. Its length depends on its first two digits
+            int prefix = twoDigits(result, position, end);
+            int aiLength = (prefix >= 0) ? aiLength(prefix) : 0;
+            if (aiLength == 0 || position + aiLength > end) {
+                return false;
+            }
+            int ai = (int) result.digits(position, position + aiLength);
+            if (ai < 0) {
+                return false;
+            }
+            position += aiLength;
+
+            // Read the value. A predefined length AI never has FNC1 after it. Any other AI ends at
+            // the next FNC1 or the end of the barcode
+            int valueStart = position;
+            int fixedLength = predefinedLength(prefix);
+            if (fixedLength > 0) {
+                position += fixedLength - aiLength;
+                if (position > end) {
+                    return false;
+                }
+            } else {
+                int limit = Math.min(end, valueStart + MAX_VALUE_LENGTH);
+                while (position < limit && result.at(position) != GS) {
+                    position++;
+                }
+                if (position == valueStart) {
+                    return false;
+                }
+            }
+            if (!addElement(result, ai, aiLength, valueStart, position)) {
+                return false;
+            }
+            if (position < end && result.at(position) == GS) {
+                position++;   // Also allowed, though not required, after a predefined length value
+            } else if (fixedLength == 0 && position < end) {
+                return false;  // Value too long
+            }
+        }
+        return result.mCount > 0;
+    }
+
+    /**
+     * Helper method to skip an AIM symbology identifier and a leading FNC1
+     *
+     * @return int position of the first AI
+     */
+    private static int skipPrefix(Result result, int position, int end) {
+        if (end - position >= 3 && result.at(position) == ']') {
+            position += 3;   // Such as ]C1 for GS1-128, ]d2 for GS1 DataMatrix or ]Q3 for GS1 QR Code
+        }
+        if (position < end && result.at(position) == GS) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Helper method to check a value and add it to the result
+     */
+    private static boolean addElement(Result result, int ai, int aiLength, int start, int end) {
+        int prefix = (aiLength == 2) ? ai : ai / (aiLength == 3 ? 10 : 100);
+        boolean numeric = isNumeric(prefix);
+        for (int i = start; i < end; i++) {
+            char c = result.at(i);
+            if (numeric ? (c < '0' || c > '9') : !isAllowed(c)) {
+                return false;
+            }
+        }
+        int index = result.mCount++;
+        result.mAis[index] = ai;
+        result.mAiLengths[index] = aiLength;
+        result.mStarts[index] = start;
+        result.mEnds[index] = end;
+        return true;
+    }
+
+    /**
+     * Helper method to check that a character is in GS1 character set 82, which values other than
+     * numbers are made of
+     */
+    private static boolean isAllowed(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || SET_82_SYMBOLS.indexOf(c) >= 0;
+    }
+
+    private static int twoDigits(Result result, int position, int end) {
+        if (position + 2 > end) {
+            return -1;
+        }
+        return (int) result.digits(position, position + 2);
+    }
+
+    /**
+     * Helper method to find the number of digits in the AIs starting with the given two digits
+     *
+     * @return int length of the AI, or 0 if no AI starts with these digits
+     */
+    private static int aiLength(int prefix) {
+        if (prefix <= 22 || prefix == 30 || prefix == 37 || prefix >= 90) {
+            return 2;
+        } else if (prefix == 23 || prefix == 24 || prefix == 25 || prefix == 40 || prefix == 41 || prefix == 42 || prefix == 71) {
+            return 3;
+        } else if ((prefix >= 31 && prefix <= 36) || prefix == 39 || prefix == 43 || prefix == 70
+                || prefix == 72 || (prefix >= 80 && prefix <= 82)) {
+            return 4;
+        }
+        return 0;
+    }
+
+    /**
+     * Helper method to find the length, including the AI, of the AIs with a length predefined by
+     * the GS1 specification. Only these may be followed by another AI without FNC1
+     *
+     * @return int length of the element, or 0 if it is not predefined
+     */
+    private static int predefinedLength(int prefix) {
+        switch (prefix) {
+            case 0:
+                return 20;
+            case 1: case 2: case 3: case 41:
+                return 16;
+            case 4:
+                return 18;
+            case 11: case 12: case 13: case 14: case 15: case 16: case 17: case 18: case 19:
+                return 8;
+            case 20:
+                return 4;
+            case 31: case 32: case 33: case 34: case 35: case 36:
+                return 10;
+            default:
+                return 0;
+        }
+    }
+
+    private static boolean isNumeric(int prefix) {
+        return (prefix >= 0 && prefix <= 4) || (prefix >= 11 && prefix <= 20) || (prefix >= 31 && prefix <= 36)
+                || prefix == 30 || prefix == 37 || prefix == 39 || prefix == 41;
+    }
+
+    /**
+     * Helper method to check whether the AIs starting with the given three digits have an implied
+     * decimal point, such as net weight (310n) or amount payable (392n)
+     */
+    private static boolean hasDecimalPoint(int threeDigits) {
+        return (threeDigits >= 310 && threeDigits <= 369) || (threeDigits >= 390 && threeDigits <= 395);
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return ((year % 4 == 0 && year % 100 != 0) || year % 400 == 0) ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+}
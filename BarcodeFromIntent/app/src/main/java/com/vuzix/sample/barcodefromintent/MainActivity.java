@@ -32,10 +32,16 @@ EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package com.vuzix.sample.barcodefromintent;
 
+import android.Manifest;
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.TextView;
@@ -45,6 +51,11 @@ import com.vuzix.sdk.barcode.BarcodeType2;
 import com.vuzix.sdk.barcode.ScanResult2;
 import com.vuzix.sdk.barcode.ScannerIntent;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
 
 /**
  * This sample demonstrates how to use an intent to access the built-in barcode scanner to scan a
@@ -56,17 +67,48 @@ import com.vuzix.sdk.barcode.ScannerIntent;
  */
 public class MainActivity extends Activity {
     private static final int REQUEST_CODE_SCAN = 90001;  // Must be unique within this Activity
+    private static final int REQUEST_CODE_PERMISSIONS = 90002;
+    private static final int REQUEST_CODE_BATCH_SCAN = 90004;
+    // Scan through our ScanService rather than the built-in scanner activity. The service keeps the
+    // camera open between scans, so repeated scans do not pay for an activity transition and
+    // opening the camera each time.
+    private static final boolean USE_SCAN_SERVICE = false;
+    // With the scan service, race both cameras on every scan instead of alternating between them.
+    // The first camera to read a barcode wins, and the service learns which camera usually wins.
+    private static final boolean RACE_CAMERAS = false;
+    // Scan many barcodes per button press through BatchScanActivity, and show all of them
+    private static final boolean USE_BATCH_SCAN = false;
+    private static final int BATCH_MAX_COUNT = 10;
+    private static final long BATCH_TIMEOUT_MS = 30000;
+    // Upload every scan in the journal to this URL, such as "https://example.com/scans", or null not
+    // to upload. A plain http server for testing also needs android:usesCleartextTraffic in the manifest
+    private static final String UPLOAD_URL = null;
+    // Check each scan against the codes expected for this pick or receiving session, read from this
+    // file in the app's external files directory, one code per line
+    private static final boolean PICK_LIST = false;
+    private static final String PICK_LIST_FILE = "picklist.txt";
     private final static String TAG = "barcodeSample";
     private boolean cameraToggle = false;
+    private String mScannerPackage;         // The app that handled the last scanner intent
+    private ScanUploader mScanUploader;
+    private volatile PickListVerifier mPickListVerifier;   // Null until loaded
+    // Reused for every scan, so GS1 barcodes are parsed without creating objects
+    private final Gs1Parser mGs1Parser = new Gs1Parser();
+    private final Gs1Parser.Result mGs1Result = new Gs1Parser.Result();
+    private final StringBuilder mGs1Text = new StringBuilder();
 
     private TextView mTextEntryField;
+    private ScanService mScanService;
+    private final ServiceConnection mScanServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            mScanService = ((ScanService.LocalBinder) service).getService();
+        }
 
-    // Limiting the barcode formats to those you expect to encounter improves the speed of scanning
-    // and increases the likelihood of properly detecting a barcode.
-    private final String[] requestedBarcodeTypes = {
-            BarcodeType2.QR_CODE.name(),
-            BarcodeType2.UPC_A.name(),
-            BarcodeType2.CODE_128.name()
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mScanService = null;
+        }
     };
 
     /**
@@ -83,12 +125,86 @@ public class MainActivity extends Activity {
         Button buttonScan = (Button) findViewById(R.id.btn_scan_barcode);
         buttonScan.requestFocusFromTouch();
         buttonScan.setOnClickListener(view -> OnScanClick());
+
+        if ((USE_SCAN_SERVICE || USE_BATCH_SCAN) && checkSelfPermission(Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED) {
+            // Unlike the built-in scanner activity, our own service needs camera permission
+            requestPermissions(new String[]{Manifest.permission.CAMERA}, REQUEST_CODE_PERMISSIONS);
+        }
+        if (UPLOAD_URL != null) {
+            try {
+                mScanUploader = ScanUploader.start(this, new URL(UPLOAD_URL));
+            } catch (MalformedURLException e) {
+                Log.e(TAG, "Invalid upload URL " + UPLOAD_URL, e);
+            }
+        }
+        if (PICK_LIST) {
+            loadPickList(new File(getExternalFilesDir(null), PICK_LIST_FILE));
+        }
+    }
+
+    /**
+     * Helper method to read the pick list on a worker thread. Scans are not checked until it is loaded
+     *
+     * @param manifest File listing the expected codes
+     */
+    private void loadPickList(File manifest) {
+        new Thread(() -> {
+            try {
+                PickListVerifier verifier = PickListVerifier.load(manifest);
+                mPickListVerifier = verifier;
+                Log.i(TAG, "Loaded " + verifier.getCount() + " pick list codes");
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to read pick list " + manifest, e);
+            }
+        }, "Pick List Loader").start();
+    }
+
+    /**
+     * Binds to the scan service, if it is used
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (USE_SCAN_SERVICE) {
+            bindService(new Intent(this, ScanService.class), mScanServiceConnection, Context.BIND_AUTO_CREATE);
+        }
+    }
+
+    /**
+     * Unbinds from the scan service, which closes the camera
+     */
+    @Override
+    protected void onStop() {
+        if (USE_SCAN_SERVICE) {
+            if (mScanService != null) {
+                mScanService.stopScan();
+                mScanService = null;
+            }
+            unbindService(mScanServiceConnection);
+            setScannerBusy(false);   // Any scan in progress was just stopped
+        }
+        super.onStop();
     }
 
     /**
      * Handler for the button press. Activates the scan.
      */
     private void OnScanClick() {
+        setScannerBusy(true);
+        String[] requestedBarcodeTypes = getRequestedBarcodeTypes();
+        if (USE_SCAN_SERVICE) {
+            OnScanServiceClick();
+            return;
+        }
+        if (USE_BATCH_SCAN) {
+            Intent batchIntent = new Intent(BatchScanActivity.ACTION_BATCH_SCAN);
+            batchIntent.setPackage(getPackageName());
+            batchIntent.putExtra(ScannerIntent.EXTRA_BARCODE2_TYPES, requestedBarcodeTypes);
+            batchIntent.putExtra(BatchScanActivity.EXTRA_MAX_COUNT, BATCH_MAX_COUNT);
+            batchIntent.putExtra(BatchScanActivity.EXTRA_TIMEOUT_MS, BATCH_TIMEOUT_MS);
+            startActivityForResult(batchIntent, REQUEST_CODE_BATCH_SCAN);
+            return;
+        }
         Intent scannerIntent = new Intent(ScannerIntent.ACTION);
         scannerIntent.putExtra(ScannerIntent.EXTRA_BARCODE2_TYPES, requestedBarcodeTypes);
         if (cameraToggle){
@@ -98,14 +214,82 @@ public class MainActivity extends Activity {
             scannerIntent.putExtra(ScannerIntent.EXTRA_CAMERA_ID, 1);
         }
         cameraToggle = !cameraToggle;
+        ComponentName scanner = scannerIntent.resolveActivity(getPackageManager());
+        mScannerPackage = (scanner != null) ? scanner.getPackageName() : null;
         try {
             // The Vuzix smart glasses have a built-in Barcode Scanner app that is registered for this intent.
             startActivityForResult(scannerIntent, REQUEST_CODE_SCAN);
         } catch (ActivityNotFoundException activityNotFound) {
             Toast.makeText(this, R.string.only_on_mseries, Toast.LENGTH_LONG).show();
+            setScannerBusy(false);
         }
     }
 
+    /**
+     * Limiting the barcode formats to those you expect to encounter improves the speed of scanning
+     * and increases the likelihood of properly detecting a barcode. They come from the active scan
+     * profile, which is read again for every scan
+     *
+     * @return array of BarcodeType2 names to look for
+     */
+    private String[] getRequestedBarcodeTypes() {
+        return ScanProfiles.current(this).getActive().getFormatNames();
+    }
+
+    /**
+     * Handler for the button press when using the scan service. Shows the first barcode found
+     */
+    private void OnScanServiceClick() {
+        if (mScanService == null) {
+            Toast.makeText(this, R.string.scan_service_not_ready, Toast.LENGTH_SHORT).show();
+            setScannerBusy(false);
+            return;
+        }
+        mTextEntryField.setText(R.string.scan_now);
+        String[] requestedBarcodeTypes = getRequestedBarcodeTypes();
+        ScanService.Callback callback = new ScanService.Callback() {
+            @Override
+            public void onScanResult(ScanResult2[] results, float decodeMillis) {
+                if (mScanService != null) {
+                    mScanService.stopScan();
+                }
+                Log.d(TAG, "Got result: " + results[0].getText());
+                mTextEntryField.setText(recordScan(results[0].getText(), results[0].getFormat(), getPackageName(), decodeMillis));
+                setScannerBusy(false);
+            }
+
+            @Override
+            public void onScanError() {
+                mTextEntryField.setText(R.string.no_data);
+                setScannerBusy(false);
+            }
+        };
+        if (RACE_CAMERAS) {
+            mScanService.startRaceScan(requestedBarcodeTypes, String.join(",", requestedBarcodeTypes), callback);
+        } else {
+            mScanService.startScan(requestedBarcodeTypes, cameraToggle ? 0 : 1, callback);
+            cameraToggle = !cameraToggle;
+        }
+    }
+
+    /**
+     * Handle permissions response for the scan service
+     *
+     * @param requestCode - unique value to identify the request
+     * @param permissions - specific permission being granted/denied
+     * @param grantResults - results for each permission
+     */
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        if (requestCode == REQUEST_CODE_PERMISSIONS) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_DENIED) {
+                Toast.makeText(this, R.string.no_permission, Toast.LENGTH_LONG).show();
+            }
+            return;
+        }
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    }
+
     /**
      * The  M-Series Barcode Scanner App will scan a barcode and return
      *
@@ -115,12 +299,15 @@ public class MainActivity extends Activity {
      */
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_CODE_SCAN || requestCode == REQUEST_CODE_BATCH_SCAN) {
+            setScannerBusy(false);
+        }
         if (requestCode == REQUEST_CODE_SCAN) {
             if (resultCode == Activity.RESULT_OK) {
                 ScanResult2 scanResult = data.getParcelableExtra(ScannerIntent.RESULT_EXTRA_SCAN_RESULT2);
                 if (scanResult != null) {
                     Log.d(TAG, "Got result: " + scanResult.getText());
-                    mTextEntryField.setText(scanResult.getText());
+                    mTextEntryField.setText(recordScan(scanResult.getText(), scanResult.getFormat(), mScannerPackage, Float.NaN));
                 } else {
                     Log.d(TAG, "No data");
                     mTextEntryField.setText(R.string.no_data);
@@ -128,6 +315,72 @@ public class MainActivity extends Activity {
             }
             return;
         }
+        if (requestCode == REQUEST_CODE_BATCH_SCAN) {
+            PackedScanResults results = PackedScanResults.fromIntent(data);
+            if (resultCode == Activity.RESULT_OK && results != null) {
+                // The batch result does not say how long each barcode took to decode
+                StringBuilder allResults = new StringBuilder();
+                for (int i = 0; i < results.size(); i++) {
+                    if (i > 0) {
+                        allResults.append('\n');
+                    }
+                    allResults.append(recordScan(results.getText(i), results.getFormat(i), getPackageName(), Float.NaN));
+                }
+                Log.d(TAG, "Got " + results.size() + " results");
+                mTextEntryField.setText(allResults);
+            } else {
+                Log.d(TAG, "No data");
+                mTextEntryField.setText(R.string.no_data);
+            }
+            return;
+        }
         super.onActivityResult(requestCode, resultCode, data);
     }
+
+    /**
+     * Utility to tell the uploader whether a scan is in progress, so uploads wait for it
+     *
+     * @param busy True while scanning
+     */
+    private void setScannerBusy(boolean busy) {
+        if (mScanUploader != null) {
+            mScanUploader.setScannerBusy(busy);
+        }
+    }
+
+    /**
+     * Records a scan in the journal, and notes whether it was already scanned this shift. With a pick
+     * list, notes instead whether it was expected or already picked. Barcodes marked as GS1 are shown
+     * in their human readable form, with each AI in parentheses. Others are shown as scanned
+     *
+     * @param text String text of the barcode
+     * @param format BarcodeType2 of the barcode, or null if unknown
+     * @param source String package of the app that scanned it
+     * @param decodeMillis float time the scanner spent decoding the barcode, or Float.NaN if unknown
+     * @return String text to show for the scan
+     */
+    private String recordScan(String text, BarcodeType2 format, String source, float decodeMillis) {
+        ScanJournal journal = ScanJournal.getInstance(this);
+        // Checked before appending, or every scan would count as a repeat
+        boolean repeated = journal.wasScannedThisShift(text);
+        journal.append(text, (format != null) ? format.name() : null, source, decodeMillis, Float.NaN);
+        String display = text;
+        if (Gs1Parser.isMarked(text) && mGs1Parser.parse(text, mGs1Result)) {
+            mGs1Text.setLength(0);
+            mGs1Result.appendHumanReadable(mGs1Text);
+            display = mGs1Text.toString();
+        }
+        PickListVerifier verifier = mPickListVerifier;
+        if (verifier != null) {
+            switch (verifier.verify(text)) {
+                case UNEXPECTED:
+                    return getString(R.string.pick_unexpected, display);
+                case DUPLICATE:
+                    return getString(R.string.pick_duplicate, display);
+                default:
+                    return display;
+            }
+        }
+        return repeated ? getString(R.string.already_scanned, display) : display;
+    }
 }
@@ -0,0 +1,205 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.util.Log;
+
+/**
+ * Tells whether the head is moving too fast for a sharp camera frame.
+ *
+ * The sensors are read through SensorManager, as in the Compass sample. Turning is measured with the
+ * gyroscope when there is one. Otherwise it is measured from the change in the orientation computed
+ * from the accelerometer and magnetometer, as the compass does. Walking and other linear motion is
+ * measured as the difference between the accelerometer magnitude and gravity.
+ *
+ * Separate thresholds for starting and stopping keep the state from flickering near the limit.
+ */
+class MotionGate implements SensorEventListener {
+    private final static String TAG = "barcodeSample";
+    // Turning rate, in radians per second
+    private final static float TURN_MOVING = 0.8f;
+    private final static float TURN_STABLE = 0.4f;
+    // Linear acceleration beyond gravity, in m/s^2
+    private final static float ACCEL_MOVING = 2.5f;
+    private final static float ACCEL_STABLE = 1.2f;
+    // Weight of each new reading in the smoothed values
+    private final static float SMOOTHING = 0.3f;
+
+    private final SensorManager mSensorManager;
+    private final Sensor mAccelerometer;
+    private final Sensor mGyroscope;
+    private final Sensor mMagnetometer;
+    private volatile boolean mMoving;
+    private boolean mStarted;
+
+    // Only accessed on the thread delivering sensor events
+    private float mTurnRate;
+    private float mLinearAccel;
+    private float[] mGravity;
+    private float[] mGeomagnetic;
+    private final float[] mRotation = new float[9];
+    private final float[] mOrientation = new float[3];
+    private float mLastAzimuth;
+    private float mLastPitch;
+    private long mLastOrientationTime;
+
+    /**
+     * @param context Context used to find the sensors
+     */
+    MotionGate(Context context) {
+        mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        if (mSensorManager != null) {
+            mAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            mGyroscope = mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+            mMagnetometer = (mGyroscope == null) ? mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD) : null;
+        } else {
+            mAccelerometer = null;
+            mGyroscope = null;
+            mMagnetometer = null;
+        }
+        if (mAccelerometer == null) {
+            Log.w(TAG, "No accelerometer. Frames are never gated");
+        }
+    }
+
+    /**
+     * Starts listening to the sensors
+     */
+    synchronized void start() {
+        if (mStarted || mAccelerometer == null) {
+            return;
+        }
+        mStarted = true;
+        mSensorManager.registerListener(this, mAccelerometer, SensorManager.SENSOR_DELAY_GAME);
+        if (mGyroscope != null) {
+            mSensorManager.registerListener(this, mGyroscope, SensorManager.SENSOR_DELAY_GAME);
+        }
+        if (mMagnetometer != null) {
+            mSensorManager.registerListener(this, mMagnetometer, SensorManager.SENSOR_DELAY_GAME);
+        }
+    }
+
+    /**
+     * Stops listening to the sensors. The head is then treated as still
+     */
+    synchronized void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mSensorManager.unregisterListener(this);
+        mMoving = false;
+        mTurnRate = 0;
+        mLinearAccel = 0;
+        mGravity = null;
+        mGeomagnetic = null;
+        mLastOrientationTime = 0;
+    }
+
+    /**
+     * @return True if the head is moving too fast to scan. May be called from any thread
+     */
+    boolean isMoving() {
+        return mMoving;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (event == null) return;
+
+        if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
+            float x = event.values[0];
+            float y = event.values[1];
+            float z = event.values[2];
+            mTurnRate += SMOOTHING * ((float) Math.sqrt(x * x + y * y + z * z) - mTurnRate);
+        } else if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            float x = event.values[0];
+            float y = event.values[1];
+            float z = event.values[2];
+            float linear = Math.abs((float) Math.sqrt(x * x + y * y + z * z) - SensorManager.GRAVITY_EARTH);
+            mLinearAccel += SMOOTHING * (linear - mLinearAccel);
+            if (mMagnetometer != null) {
+                mGravity = event.values.clone();
+                updateTurnFromOrientation(event.timestamp);
+            }
+        } else if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
+            mGeomagnetic = event.values.clone();
+        }
+
+        if (mMoving) {
+            mMoving = mTurnRate > TURN_STABLE || mLinearAccel > ACCEL_STABLE;
+        } else {
+            mMoving = mTurnRate > TURN_MOVING || mLinearAccel > ACCEL_MOVING;
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // Not needed. Only changes in the readings matter
+    }
+
+    /**
+     * Helper method to estimate the turning rate from the compass orientation, for devices without
+     * a gyroscope
+     *
+     * @param timestamp long time of the accelerometer reading, in nanoseconds
+     */
+    private void updateTurnFromOrientation(long timestamp) {
+        if (mGravity == null || mGeomagnetic == null
+                || !SensorManager.getRotationMatrix(mRotation, null, mGravity, mGeomagnetic)) {
+            return;
+        }
+        SensorManager.getOrientation(mRotation, mOrientation);
+        if (mLastOrientationTime != 0 && timestamp > mLastOrientationTime) {
+            float seconds = (timestamp - mLastOrientationTime) / 1e9f;
+            float azimuthChange = mOrientation[0] - mLastAzimuth;
+            // Azimuth wraps around at +/- PI
+            if (azimuthChange > Math.PI) {
+                azimuthChange -= 2 * Math.PI;
+            } else if (azimuthChange < -Math.PI) {
+                azimuthChange += 2 * Math.PI;
+            }
+            float pitchChange = mOrientation[1] - mLastPitch;
+            float rate = (float) Math.sqrt(azimuthChange * azimuthChange + pitchChange * pitchChange) / seconds;
+            mTurnRate += SMOOTHING * (rate - mTurnRate);
+        }
+        mLastAzimuth = mOrientation[0];
+        mLastPitch = mOrientation[1];
+        mLastOrientationTime = timestamp;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.content.Intent;
+import android.graphics.Point;
+
+import com.vuzix.sdk.barcode.BarcodeType2;
+import com.vuzix.sdk.barcode.ScanResult2;
+
+import java.util.Collection;
+
+/**
+ * Many scan results packed into a handful of flat arrays, so they can be returned in one result
+ * Intent.
+ *
+ * Putting an array of ScanResult2 into an Intent writes a separate Parcelable, with its class name,
+ * for every result. Here the text of all results is joined into one String, and the result points
+ * are stored in int arrays, so the parcel size grows only with the data itself.
+ *
+ * Only platform types are put in the Intent, as the caller is usually another app that does not
+ * have this class. The extras are described in BatchScanActivity. Formats are sent as BarcodeType2
+ * names, so a caller built with another SDK version still reads them, or sees an unknown format.
+ */
+public class PackedScanResults {
+    private final String texts;          // The text of all results, one after another
+    private final int[] textEnds;        // End index in texts of each result
+    private final String[] formats;      // BarcodeType2 name of each result, or null if not known
+    private final int[] pointEnds;       // End index in points of each result
+    private final int[] points;          // x and y of every result point, one after another
+
+    /**
+     * Packs the given results
+     *
+     * @param results Collection of ScanResult2 to pack
+     */
+    public PackedScanResults(Collection<ScanResult2> results) {
+        StringBuilder allTexts = new StringBuilder();
+        textEnds = new int[results.size()];
+        formats = new String[results.size()];
+        pointEnds = new int[results.size()];
+        int pointCount = 0;
+        for (ScanResult2 result : results) {
+            Point[] resultPoints = result.getResultPoints();
+            pointCount += (resultPoints != null) ? resultPoints.length * 2 : 0;
+        }
+        points = new int[pointCount];
+
+        int index = 0;
+        int pointIndex = 0;
+        for (ScanResult2 result : results) {
+            allTexts.append(result.getText());
+            textEnds[index] = allTexts.length();
+            formats[index] = (result.getFormat() != null) ? result.getFormat().name() : null;
+            Point[] resultPoints = result.getResultPoints();
+            if (resultPoints != null) {
+                for (Point point : resultPoints) {
+                    points[pointIndex++] = point.x;
+                    points[pointIndex++] = point.y;
+                }
+            }
+            pointEnds[index] = pointIndex;
+            index++;
+        }
+        texts = allTexts.toString();
+    }
+
+    private PackedScanResults(String texts, int[] textEnds, String[] formats, int[] pointEnds, int[] points) {
+        this.texts = texts;
+        this.textEnds = textEnds;
+        this.formats = formats;
+        this.pointEnds = pointEnds;
+        this.points = points;
+    }
+
+    /**
+     * Utility to read results from the Intent returned by BatchScanActivity
+     *
+     * @param data Intent returned, may be null
+     * @return PackedScanResults read, or null if the Intent does not hold a complete set
+     */
+    public static PackedScanResults fromIntent(Intent data) {
+        if (data == null) {
+            return null;
+        }
+        String texts = data.getStringExtra(BatchScanActivity.RESULT_EXTRA_TEXTS);
+        int[] textEnds = data.getIntArrayExtra(BatchScanActivity.RESULT_EXTRA_TEXT_ENDS);
+        String[] formats = data.getStringArrayExtra(BatchScanActivity.RESULT_EXTRA_FORMATS);
+        int[] pointEnds = data.getIntArrayExtra(BatchScanActivity.RESULT_EXTRA_POINT_ENDS);
+        int[] points = data.getIntArrayExtra(BatchScanActivity.RESULT_EXTRA_POINTS);
+        if (texts == null || textEnds == null || formats == null || pointEnds == null || points == null
+                || formats.length != textEnds.length || pointEnds.length != textEnds.length) {
+            return null;
+        }
+        return new PackedScanResults(texts, textEnds, formats, pointEnds, points);
+    }
+
+    /**
+     * Adds the results to an Intent, as the extras described in BatchScanActivity
+     *
+     * @param data Intent to add the results to
+     */
+    public void putExtras(Intent data) {
+        data.putExtra(BatchScanActivity.RESULT_EXTRA_TEXTS, texts);
+        data.putExtra(BatchScanActivity.RESULT_EXTRA_TEXT_ENDS, textEnds);
+        data.putExtra(BatchScanActivity.RESULT_EXTRA_FORMATS, formats);
+        data.putExtra(BatchScanActivity.RESULT_EXTRA_POINT_ENDS, pointEnds);
+        data.putExtra(BatchScanActivity.RESULT_EXTRA_POINTS, points);
+    }
+
+    /**
+     * @return int number of results
+     */
+    public int size() {
+        return textEnds.length;
+    }
+
+    /**
+     * @param index int index of the result
+     * @return String text of the result
+     */
+    public String getText(int index) {
+        int start = (index == 0) ? 0 : textEnds[index - 1];
+        return texts.substring(start, textEnds[index]);
+    }
+
+    /**
+     * @param index int index of the result
+     * @return BarcodeType2 of the result, or null if not known to this SDK version
+     */
+    public BarcodeType2 getFormat(int index) {
+        if (formats[index] == null) {
+            return null;
+        }
+        try {
+            return BarcodeType2.valueOf(formats[index]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param index int index of the result
+     * @return Point[] location of the result within the frame it was found in
+     */
+    public Point[] getResultPoints(int index) {
+        int start = (index == 0) ? 0 : pointEnds[index - 1];
+        Point[] resultPoints = new Point[(pointEnds[index] - start) / 2];
+        for (int i = 0; i < resultPoints.length; i++) {
+            resultPoints[i] = new Point(points[start + i * 2], points[start + i * 2 + 1]);
+        }
+        return resultPoints;
+    }
+}
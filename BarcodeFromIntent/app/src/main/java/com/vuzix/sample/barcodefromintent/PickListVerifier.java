@@ -0,0 +1,247 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Checks scanned codes against the list of codes expected in a pick or receiving session.
+ *
+ * A Bloom filter answers first. It holds about 10 bits per code, and rejects almost every unexpected
+ * code without touching the larger exact set. Codes it accepts are confirmed in an open addressing
+ * hash table over the codes, packed as UTF-8 in one array, so a million codes take tens of megabytes
+ * rather than the hundreds a HashSet of Strings would. Both checks take constant time.
+ *
+ * Each expected code is reported once as EXPECTED, and afterwards as DUPLICATE.
+ */
+final class PickListVerifier {
+    private final static int BLOOM_BITS_PER_CODE = 10;
+    private final static int BLOOM_HASHES = 7;   // About a 1% false positive rate at 10 bits per code
+
+    /**
+     * The result of checking a scanned code
+     */
+    enum Result {
+        EXPECTED,
+        UNEXPECTED,
+        DUPLICATE
+    }
+
+    private final long[] mBloom;
+    private final long mBloomBits;
+    private final byte[] mCodes;
+    private final int[] mStarts;      // Code i is mCodes[mStarts[i]] to mCodes[mStarts[i + 1]]
+    private final int[] mTable;       // Code index plus one, or zero for an empty slot
+    private final int mTableMask;
+    private final int mCount;
+    private final BitSet mScanned;
+    private int mScannedCount;
+
+    private PickListVerifier(byte[] codes, int[] starts, int count) {
+        mCodes = codes;
+        mStarts = starts;
+        mCount = count;
+        mScanned = new BitSet(count);
+        mBloomBits = Math.max(64, (long) count * BLOOM_BITS_PER_CODE);
+        mBloom = new long[(int) ((mBloomBits + 63) / 64)];
+        int tableSize = Integer.highestOneBit(Math.max(2, count * 2 - 1)) << 1;   // At most half full
+        mTable = new int[tableSize];
+        mTableMask = tableSize - 1;
+
+        for (int i = 0; i < count; i++) {
+            int start = starts[i];
+            int length = starts[i + 1] - start;
+            long hash = hash(codes, start, length);
+            if (find(codes, start, length, hash) >= 0) {
+                continue;   // Listed twice
+            }
+            addToBloom(hash);
+            int slot = (int) hash & mTableMask;
+            while (mTable[slot] != 0) {
+                slot = (slot + 1) & mTableMask;
+            }
+            mTable[slot] = i + 1;
+        }
+    }
+
+    /**
+     * Reads the expected codes from a manifest, one per line. Only the text before the first comma
+     * is used, so a CSV file whose first column is the code works too. Blank lines are skipped
+     *
+     * @param manifest File listing the expected codes
+     * @return PickListVerifier for the codes
+     * @throws IOException if the manifest cannot be read
+     */
+    static PickListVerifier load(File manifest) throws IOException {
+        byte[] codes = new byte[64 * 1024];
+        int[] starts = new int[1024];
+        int count = 0;
+        int used = 0;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int comma = line.indexOf(',');
+                String code = ((comma >= 0) ? line.substring(0, comma) : line).trim();
+                if (code.isEmpty()) {
+                    continue;
+                }
+                byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+                if (used + bytes.length > codes.length) {
+                    codes = Arrays.copyOf(codes, Math.max(codes.length * 2, used + bytes.length));
+                }
+                if (count + 2 > starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count++] = used;
+                System.arraycopy(bytes, 0, codes, used, bytes.length);
+                used += bytes.length;
+            }
+        }
+        starts[count] = used;
+        return new PickListVerifier(codes, starts, count);
+    }
+
+    /**
+     * Checks a scanned code, and remembers it was scanned
+     *
+     * @param code String text of the barcode
+     * @return Result of the check
+     */
+    synchronized Result verify(String code) {
+        byte[] bytes = code.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(bytes, 0, bytes.length);
+        if (!mightContain(hash)) {
+            return Result.UNEXPECTED;
+        }
+        int index = find(bytes, 0, bytes.length, hash);
+        if (index < 0) {
+            return Result.UNEXPECTED;   // A Bloom filter false positive
+        }
+        if (mScanned.get(index)) {
+            return Result.DUPLICATE;
+        }
+        mScanned.set(index);
+        mScannedCount++;
+        return Result.EXPECTED;
+    }
+
+    /**
+     * @return int number of distinct expected codes scanned so far
+     */
+    synchronized int getScannedCount() {
+        return mScannedCount;
+    }
+
+    /**
+     * @return int number of codes in the manifest, including any listed twice
+     */
+    int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Helper method to find a code in the hash table
+     *
+     * @return int index of the code, or -1 if it is not there
+     */
+    private int find(byte[] data, int start, int length, long hash) {
+        int slot = (int) hash & mTableMask;
+        int entry;
+        while ((entry = mTable[slot]) != 0) {
+            int index = entry - 1;
+            int codeStart = mStarts[index];
+            if (mStarts[index + 1] - codeStart == length && regionMatches(data, start, codeStart, length)) {
+                return index;
+            }
+            slot = (slot + 1) & mTableMask;
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(byte[] data, int start, int codeStart, int length) {
+        for (int i = 0; i < length; i++) {
+            if (data[start + i] != mCodes[codeStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to set the Bloom filter bits of a code. The bit positions are derived from the
+     * two halves of one 64 bit hash
+     */
+    private void addToBloom(long hash) {
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h1 + i * h2) % mBloomBits;
+            mBloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = (h1 + i * h2) % mBloomBits;
+            if ((mBloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to hash a code. FNV-1a, with a final mix so the low bits used by the hash table
+     * depend on every byte
+     */
+    private static long hash(byte[] data, int start, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= data[start + i] & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
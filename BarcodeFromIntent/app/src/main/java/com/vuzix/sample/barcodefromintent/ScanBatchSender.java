@@ -0,0 +1,214 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends the scans in a ScanJournal to an HTTP endpoint, one batch per call, in order.
+ *
+ * Each batch of up to BATCH_RECORDS scans is POSTed as gzipped JSON lines, one object per scan. A
+ * batch is retried with exponential backoff until the endpoint accepts it, so scans arrive in order.
+ * A batch the endpoint rejects as malformed is logged and skipped rather than blocking the rest.
+ *
+ * This does no scheduling of its own. ScanUploader calls sendNextBatch() on its thread, and waits
+ * the delay it returns, so the batching and backoff can be tested against a local server.
+ */
+final class ScanBatchSender {
+    private final static String TAG = "barcodeSample";
+    final static int BATCH_RECORDS = 200;
+    final static long IDLE_POLL_MS = 15000;      // How often to look for new scans
+    final static long MIN_BACKOFF_MS = 1000;
+    final static long MAX_BACKOFF_MS = 5 * 60 * 1000;
+    private final static int TIMEOUT_MS = 15000;
+
+    private final ScanJournal mJournal;
+    private final URL mEndpoint;
+    private final Random mRandom;
+    private long mLastUploaded;
+    private long mBackoff = MIN_BACKOFF_MS;
+
+    /**
+     * @param journal ScanJournal to read the scans from
+     * @param endpoint URL to POST the scans to
+     * @param lastUploaded long sequence of the last scan already uploaded, or -1 for none
+     * @param random Random used to spread out retries
+     */
+    ScanBatchSender(ScanJournal journal, URL endpoint, long lastUploaded, Random random) {
+        mJournal = journal;
+        mEndpoint = endpoint;
+        mLastUploaded = lastUploaded;
+        mRandom = random;
+    }
+
+    /**
+     * @return long sequence of the last scan uploaded, or skipped as rejected
+     */
+    long getLastUploaded() {
+        return mLastUploaded;
+    }
+
+    /**
+     * @return True while a failed batch is waiting to be retried
+     */
+    boolean isBackingOff() {
+        return mBackoff != MIN_BACKOFF_MS;
+    }
+
+    /**
+     * Forgets the backoff, such as when the network comes back, so the next retry waits the least
+     */
+    void resetBackoff() {
+        mBackoff = MIN_BACKOFF_MS;
+    }
+
+    /**
+     * Sends the next batch of scans, if there are any
+     *
+     * @return long milliseconds to wait before calling again. 0 if more scans may be waiting
+     */
+    long sendNextBatch() {
+        List<ScanJournal.Record> batch = mJournal.read(mLastUploaded + 1, BATCH_RECORDS);
+        if (batch.isEmpty()) {
+            return IDLE_POLL_MS;
+        }
+        if (batch.get(0).sequence > mLastUploaded + 1) {
+            Log.w(TAG, "Scans " + (mLastUploaded + 1) + " to " + (batch.get(0).sequence - 1)
+                    + " were deleted from the journal before they could be uploaded");
+        }
+
+        int responseCode;
+        try {
+            responseCode = post(encode(batch));
+        } catch (IOException e) {
+            Log.d(TAG, "Upload failed, retrying in " + mBackoff + "ms: " + e);
+            return retryDelay();
+        }
+        if (responseCode >= 200 && responseCode < 300) {
+            Log.d(TAG, "Uploaded " + batch.size() + " scans");
+        } else if (responseCode >= 400 && responseCode < 500 && responseCode != 408 && responseCode != 429) {
+            // Retrying will not help, and would hold back every later scan
+            Log.e(TAG, "Upload rejected with " + responseCode + ". Skipping scans " + batch.get(0).sequence
+                    + " to " + batch.get(batch.size() - 1).sequence);
+        } else {
+            Log.d(TAG, "Upload failed with " + responseCode + ", retrying in " + mBackoff + "ms");
+            return retryDelay();
+        }
+        mLastUploaded = batch.get(batch.size() - 1).sequence;
+        mBackoff = MIN_BACKOFF_MS;
+        return 0;   // There may be more waiting
+    }
+
+    /**
+     * Helper method to choose when to retry, doubling the backoff up to MAX_BACKOFF_MS. The delay is
+     * randomized so many glasses coming back online do not retry in step
+     */
+    private long retryDelay() {
+        long delay = mBackoff / 2 + (long) (mRandom.nextDouble() * mBackoff / 2);
+        mBackoff = Math.min(mBackoff * 2, MAX_BACKOFF_MS);
+        return delay;
+    }
+
+    /**
+     * Helper method to encode a batch as gzipped JSON lines
+     *
+     * @param batch List of Record to encode
+     * @return byte array of the request body
+     * @throws IOException never, since the output is in memory
+     */
+    private static byte[] encode(List<ScanJournal.Record> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            for (ScanJournal.Record record : batch) {
+                JSONObject json = new JSONObject();
+                try {
+                    json.put("sequence", record.sequence);
+                    json.put("time", record.timeMillis);
+                    json.put("payload", record.payload);
+                    json.put("symbology", record.symbology);
+                    json.put("source", record.source);
+                    if (!Float.isNaN(record.decodeMillis)) {
+                        json.put("decodeMs", record.decodeMillis);
+                    }
+                    if (!Float.isNaN(record.heading)) {
+                        json.put("heading", record.heading);
+                    }
+                } catch (JSONException e) {
+                    throw new IOException(e);
+                }
+                out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Helper method to POST a request body
+     *
+     * @param body byte array of gzipped JSON lines
+     * @return int HTTP response code
+     * @throws IOException if the endpoint cannot be reached
+     */
+    private int post(byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) mEndpoint.openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/x-ndjson");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * A durable log of every barcode scanned, kept across runs of the app.
+ *
+ * Records are appended to segment files on a writer thread, so adding one never waits for the disk.
+ * The writer takes every record queued while the previous write was syncing, and writes them with a
+ * single fsync, so at several scans per second it does not fsync per scan. Each segment is rotated
+ * at SEGMENT_BYTES, and the oldest are deleted beyond MAX_SEGMENTS. Segments are named after the
+ * sequence number of their first record.
+ *
+ * Each record is prefixed with its length and CRC32. A record torn by a crash is dropped, with
+ * anything after it, when the journal is opened again.
+ *
+ * The payloads scanned during the current shift are kept in memory, so checking whether something
+ * was already scanned never reads the disk. A shift starts at startShift(), or SHIFT_LENGTH_MS
+ * before the app started.
+ */
+final class ScanJournal {
+    private final static String TAG = "barcodeSample";
+    private final static String DIRECTORY = "scan_journal";
+    private final static String SEGMENT_SUFFIX = ".journal";
+    private final static long SEGMENT_BYTES = 1024 * 1024;
+    private final static int MAX_SEGMENTS = 32;
+    private final static long SHIFT_LENGTH_MS = 8 * 60 * 60 * 1000;
+    private final static int MAX_RECORD_BYTES = 256 * 1024;   // Anything larger is corruption
+
+    private static ScanJournal sInstance;
+
+    private final File mDirectory;
+    private final long mSegmentBytes;
+    private final int mMaxSegments;
+    private final LinkedBlockingQueue<Record> mQueue = new LinkedBlockingQueue<>();
+    // Payload to the time it was last scanned, for the current shift
+    private final Map<String, Long> mShiftIndex = new ConcurrentHashMap<>();
+    private volatile long mShiftStart = System.currentTimeMillis() - SHIFT_LENGTH_MS;
+
+    // Only accessed on the writer thread
+    private FileChannel mSegment;
+    private long mNextSequence;
+    private final ByteArrayOutputStream mBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream mBufferOut = new DataOutputStream(mBuffer);
+    private final ByteArrayOutputStream mRecord = new ByteArrayOutputStream();
+    private final DataOutputStream mRecordOut = new DataOutputStream(mRecord);
+    private final CRC32 mCrc = new CRC32();
+
+    /**
+     * A single scan in the journal
+     */
+    static final class Record {
+        long sequence;   // Assigned when written. Increases by one per record, across segments
+        final long timeMillis;
+        final String payload;
+        final String symbology;
+        final String source;
+        final float decodeMillis;
+        final float heading;
+
+        Record(long sequence, long timeMillis, String payload, String symbology, String source, float decodeMillis, float heading) {
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.payload = payload;
+            this.symbology = symbology;
+            this.source = source;
+            this.decodeMillis = decodeMillis;
+            this.heading = heading;
+        }
+    }
+
+    /**
+     * Opens a journal in its own directory. Apps use getInstance(), so there is one per process
+     *
+     * @param directory File of the directory holding the segments
+     * @param segmentBytes long size at which a segment is rotated
+     * @param maxSegments int most segments kept. The oldest are deleted beyond this
+     */
+    ScanJournal(File directory, long segmentBytes, int maxSegments) {
+        mDirectory = directory;
+        mSegmentBytes = segmentBytes;
+        mMaxSegments = maxSegments;
+        Thread writer = new Thread(this::runWriter, "Scan Journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param context Context used to find the journal directory
+     * @return The journal shared by the whole process
+     */
+    static synchronized ScanJournal getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ScanJournal(new File(context.getApplicationContext().getFilesDir(), DIRECTORY),
+                    SEGMENT_BYTES, MAX_SEGMENTS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Adds a scan to the journal. Returns at once. The record is written on the writer thread
+     *
+     * @param payload String text of the barcode
+     * @param symbology String name of the BarcodeType2, or null if unknown
+     * @param source String package of the app that scanned it
+     * @param decodeMillis float time the scanner spent decoding the barcode, or Float.NaN if unknown
+     * @param heading float compass heading in degrees, or Float.NaN if unknown
+     */
+    void append(String payload, String symbology, String source, float decodeMillis, float heading) {
+        long now = System.currentTimeMillis();
+        mShiftIndex.put(payload, now);
+        mQueue.offer(new Record(-1, now, payload, symbology, source, decodeMillis, heading));
+    }
+
+    /**
+     * Checks whether a payload was scanned this shift. Never reads the disk
+     *
+     * @param payload String text of the barcode
+     * @return True if it was scanned since the shift started
+     */
+    boolean wasScannedThisShift(String payload) {
+        Long time = mShiftIndex.get(payload);
+        return time != null && time >= mShiftStart;
+    }
+
+    /**
+     * Starts a new shift. Nothing scanned before now counts as scanned this shift
+     */
+    void startShift() {
+        mShiftStart = System.currentTimeMillis();
+        mShiftIndex.clear();
+    }
+
+    /**
+     * Reads records in sequence order. Safe to call from any thread, while records are being written
+     *
+     * @param fromSequence long sequence of the first record wanted
+     * @param maxRecords int most records to return
+     * @return List of Record from fromSequence on, or from the oldest kept if the wanted ones were
+     * deleted. Empty if there are none yet
+     */
+    List<Record> read(long fromSequence, int maxRecords) {
+        List<Record> records = new ArrayList<>();
+        File[] segments = listSegments();
+        int first = 0;
+        for (int i = 0; i < segments.length; i++) {
+            if (segmentNumber(segments[i]) <= fromSequence) {
+                first = i;   // The last segment starting at or before the sequence holds it
+            }
+        }
+        for (int i = first; i < segments.length && records.size() < maxRecords; i++) {
+            readSegment(segments[i], record -> {
+                if (record.sequence >= fromSequence) {
+                    records.add(record);
+                }
+                return records.size() < maxRecords;
+            });
+        }
+        return records;
+    }
+
+    /**
+     * The writer thread. Opens the journal, then writes records as they are queued
+     */
+    private void runWriter() {
+        try {
+            open();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open scan journal. Scans are not recorded", e);
+            return;
+        }
+        List<Record> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(mQueue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            mQueue.drainTo(batch);
+            try {
+                write(batch);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to write " + batch.size() + " scans to the journal", e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Helper method to write a batch of records with one fsync, then rotate the segment if it is full
+     *
+     * @param batch List of Record to write
+     * @throws IOException if the segment cannot be written
+     */
+    private void write(List<Record> batch) throws IOException {
+        mBuffer.reset();
+        for (Record record : batch) {
+            record.sequence = mNextSequence;
+            try {
+                encode(record);
+            } catch (UTFDataFormatException e) {
+                // Only this record is dropped, and its sequence goes to the next one, so the rest
+                // of the batch is written and the sequences stay without gaps
+                Log.e(TAG, "Scan of " + record.payload.length() + " characters is too long for the journal. Not recorded");
+                record.sequence = -1;
+                continue;
+            }
+            mNextSequence++;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(mBuffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            mSegment.write(bytes);
+        }
+        mSegment.force(false);
+        if (mSegment.size() >= mSegmentBytes) {
+            mSegment.close();
+            openSegment(mNextSequence);
+            deleteOldSegments();
+        }
+    }
+
+    /**
+     * Helper method to add a record to mBuffer, with its length and CRC32. Nothing is added if the
+     * record cannot be encoded
+     *
+     * @param record Record to add
+     * @throws UTFDataFormatException if a string is over 65535 bytes encoded, too long for writeUTF
+     * @throws IOException never otherwise, since the buffers are in memory
+     */
+    private void encode(Record record) throws IOException {
+        mRecord.reset();
+        mRecordOut.writeLong(record.sequence);
+        mRecordOut.writeLong(record.timeMillis);
+        mRecordOut.writeUTF(record.payload);
+        mRecordOut.writeUTF(record.symbology != null ? record.symbology : "");
+        mRecordOut.writeUTF(record.source != null ? record.source : "");
+        mRecordOut.writeFloat(record.decodeMillis);
+        mRecordOut.writeFloat(record.heading);
+        mRecordOut.flush();
+
+        mCrc.reset();
+        byte[] body = mRecord.toByteArray();
+        mCrc.update(body, 0, body.length);
+        mBufferOut.writeInt(body.length);
+        mBufferOut.writeInt((int) mCrc.getValue());
+        mBufferOut.write(body);
+        mBufferOut.flush();
+    }
+
+    /**
+     * Reads the existing segments into the shift index, drops any torn record at the end, and opens
+     * the last segment for appending
+     *
+     * @throws IOException if the directory or last segment cannot be opened
+     */
+    private void open() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create " + mDirectory);
+        }
+        File[] segments = listSegments();
+        long lastNumber = 0;
+        long validLength = 0;
+        long shiftStart = mShiftStart;
+        for (File segment : segments) {
+            lastNumber = segmentNumber(segment);
+            // Segments last modified before the shift hold nothing for the index, but the last one
+            // is always read, to find the next sequence number and any torn record
+            if (segment.lastModified() < shiftStart && segment != segments[segments.length - 1]) {
+                continue;
+            }
+            validLength = readSegment(segment, record -> {
+                mNextSequence = record.sequence + 1;
+                if (record.timeMillis >= shiftStart) {
+                    mShiftIndex.merge(record.payload, record.timeMillis, Math::max);
+                }
+                return true;
+            });
+        }
+        mNextSequence = Math.max(mNextSequence, lastNumber);
+        openSegment(lastNumber);
+        if (mSegment.size() > validLength) {
+            Log.w(TAG, "Dropping " + (mSegment.size() - validLength) + " bytes torn from the end of the scan journal");
+            mSegment.truncate(validLength);
+        }
+        mSegment.position(mSegment.size());
+    }
+
+    /**
+     * Receives the records of a segment as it is read
+     */
+    private interface RecordVisitor {
+        /**
+         * @param record Record read
+         * @return True to keep reading, false to stop
+         */
+        boolean visit(Record record);
+    }
+
+    /**
+     * Helper method to read the records of a segment, up to the first that is torn or corrupt
+     *
+     * @param segment File of the segment
+     * @param visitor RecordVisitor to receive the records
+     * @return long bytes of valid records read from the start of the segment
+     */
+    private static long readSegment(File segment, RecordVisitor visitor) {
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+        byte[] body = new byte[256];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            while (true) {
+                int length = in.readInt();
+                int expectedCrc = in.readInt();
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                if (body.length < length) {
+                    body = new byte[length];
+                }
+                in.readFully(body, 0, length);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != expectedCrc) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body, 0, length));
+                validLength += 8 + length;
+                if (!visitor.visit(new Record(record.readLong(), record.readLong(), record.readUTF(), emptyToNull(record.readUTF()),
+                        emptyToNull(record.readUTF()), record.readFloat(), record.readFloat()))) {
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            // The end of the segment, or a record torn part way
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + segment, e);
+        }
+        return validLength;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Opens a segment for appending, creating it if needed
+     *
+     * @param number long sequence of the first record in the segment, which names the file
+     * @throws IOException if the segment cannot be opened
+     */
+    private void openSegment(long number) throws IOException {
+        File file = new File(mDirectory, String.format("%012d", number) + SEGMENT_SUFFIX);
+        mSegment = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void deleteOldSegments() {
+        File[] segments = listSegments();
+        for (int i = 0; i < segments.length - mMaxSegments; i++) {
+            if (!segments[i].delete()) {
+                Log.w(TAG, "Unable to delete " + segments[i]);
+            }
+        }
+    }
+
+    /**
+     * @return array of File of the segments, oldest first
+     */
+    private File[] listSegments() {
+        File[] segments = mDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);   // The numbers are zero padded, so names sort in order
+        return segments;
+    }
+
+    private static long segmentNumber(File segment) {
+        String name = segment.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.vuzix.sdk.barcode.BarcodeType2;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Named scan profiles, so each workflow can scan with only the formats and settings it needs.
+ *
+ * The profiles are read from profiles.txt in the app's external files directory. Each line is a
+ * profile name followed by its settings, and settings that are left out keep their defaults:
+ *
+ *   # Picking only needs Code 128 labels, read from the middle of the view
+ *   active=picking
+ *   picking formats=CODE_128 roi=center dedup=3000
+ *   receiving formats=QR_CODE,CODE_128,UPC_A resolution=1920x1080 votes=3 window=6
+ *
+ * The settings are formats, roi (full or center), resolution, zoom (on or off), dedup (milliseconds
+ * before the same barcode is reported again), and votes and window (frames that must agree before a
+ * result is accepted). The active line picks the profile to use, otherwise the first one is used.
+ * This app uses formats, and resolution for the scan service camera. The others are accepted so
+ * one file can serve every app.
+ *
+ * The file is parsed once into an immutable ScanProfiles. When the file changes it is parsed again
+ * and the new ScanProfiles replaces the old one in a single step, so scanning code that calls
+ * current() always sees one complete set of settings. If the new file has an error, the old profiles
+ * stay in use.
+ *
+ * The file is read on a background thread, as the first call to current() is often on the UI thread
+ * at startup. Until it has been read, current() returns the built-in DEFAULT_PROFILE, and listeners
+ * are told once the profiles from the file replace it.
+ */
+final class ScanProfiles {
+    private final static String TAG = "ScanProfiles";
+    static final String FILE_NAME = "profiles.txt";
+    private final static String DEFAULT_NAME = "default";
+
+    /**
+     * The part of the frame that is scanned
+     */
+    enum Roi {
+        FULL,
+        CENTER      // The middle half of the width and third of the height
+    }
+
+    /**
+     * The settings of one profile. Profiles never change once created
+     */
+    static final class Profile {
+        final String name;
+        private final BarcodeType2[] formats;
+        final Roi roi;
+        final int width;
+        final int height;
+        final boolean zoom;
+        final long dedupMillis;
+        final float votes;
+        final int window;
+
+        Profile(String name, BarcodeType2[] formats, Roi roi, int width, int height, boolean zoom,
+                long dedupMillis, float votes, int window) {
+            this.name = name;
+            this.formats = formats.clone();
+            this.roi = roi;
+            this.width = width;
+            this.height = height;
+            this.zoom = zoom;
+            this.dedupMillis = dedupMillis;
+            this.votes = votes;
+            this.window = window;
+        }
+
+        /**
+         * @return array of BarcodeType2 to look for
+         */
+        BarcodeType2[] getFormats() {
+            return formats.clone();
+        }
+
+        /**
+         * @return array of BarcodeType2 names to look for, as the scanner intent and fragment take them
+         */
+        String[] getFormatNames() {
+            String[] names = new String[formats.length];
+            for (int i = 0; i < formats.length; i++) {
+                names[i] = formats[i].name();
+            }
+            return names;
+        }
+
+        /**
+         * @param format BarcodeType2 to check
+         * @return True if this profile looks for the format
+         */
+        boolean hasFormat(BarcodeType2 format) {
+            for (BarcodeType2 each : formats) {
+                if (each == format) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Called on the UI thread when the profiles are reloaded
+     */
+    interface Listener {
+        void onProfilesChanged(ScanProfiles profiles);
+    }
+
+    // The settings this app used before profiles, and still uses without a profiles file
+    private final static Profile DEFAULT_PROFILE = new Profile(DEFAULT_NAME,
+            new BarcodeType2[]{BarcodeType2.QR_CODE, BarcodeType2.UPC_A, BarcodeType2.CODE_128},
+            Roi.FULL, 1280, 720, true, 2000, 2.0f, 5);
+
+    // Used until the file has been read, and whenever there is no file
+    private final static ScanProfiles DEFAULTS = new ScanProfiles(Collections.singletonMap(DEFAULT_NAME, DEFAULT_PROFILE), DEFAULT_PROFILE);
+
+    private static volatile ScanProfiles sCurrent;
+    private static File sFile;
+    private static FileObserver sObserver;   // Kept here, as an observer that is garbage collected stops
+    private static final CopyOnWriteArrayList<Listener> sListeners = new CopyOnWriteArrayList<>();
+    private static final Handler sUiThreadHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<String, Profile> mProfiles;
+    private final Profile mActive;
+
+    private ScanProfiles(Map<String, Profile> profiles, Profile active) {
+        mProfiles = Collections.unmodifiableMap(profiles);
+        mActive = active;
+    }
+
+    /**
+     * Gets the current profiles. The first call starts reading the profiles file in the background,
+     * and watching it, and returns without waiting for the disk
+     *
+     * @param context Context used to find the profiles file
+     * @return ScanProfiles in use now, the defaults until the file has been read. Call again for each
+     * scan, to pick up changes
+     */
+    static ScanProfiles current(Context context) {
+        ScanProfiles current = sCurrent;
+        if (current != null) {
+            return current;
+        }
+        synchronized (ScanProfiles.class) {
+            if (sCurrent == null) {
+                sCurrent = DEFAULTS;
+                Context applicationContext = context.getApplicationContext();
+                new Thread(() -> startWatching(applicationContext), "Scan Profiles").start();
+            }
+            return sCurrent;
+        }
+    }
+
+    /**
+     * @param listener Listener to call when the profiles change
+     */
+    static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    /**
+     * @param listener Listener to stop calling
+     */
+    static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * @return Profile to scan with
+     */
+    Profile getActive() {
+        return mActive;
+    }
+
+    /**
+     * @param name String name of the profile
+     * @return Profile with that name, or null if there is none
+     */
+    Profile get(String name) {
+        return mProfiles.get(name);
+    }
+
+    /**
+     * Helper method to find the profiles file, watch it, and read it for the first time. Called on a
+     * background thread, as finding the directory may create it
+     */
+    private static void startWatching(Context context) {
+        File directory = context.getExternalFilesDir(null);
+        synchronized (ScanProfiles.class) {
+            sFile = new File(directory, FILE_NAME);
+            if (directory != null) {
+                // The directory is watched, since the file may not exist yet
+                sObserver = new FileObserver(directory.getPath(), FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.DELETE) {
+                    @Override
+                    public void onEvent(int event, String path) {
+                        if (FILE_NAME.equals(path)) {
+                            reload();
+                        }
+                    }
+                };
+                sObserver.startWatching();
+            }
+        }
+        reload();
+    }
+
+    /**
+     * Helper method to read the profiles file, at first and again after it changes. Called on a
+     * background or the observer thread
+     */
+    private static void reload() {
+        ScanProfiles profiles;
+        synchronized (ScanProfiles.class) {
+            profiles = load(sFile, sCurrent);
+            if (profiles == sCurrent) {
+                return;
+            }
+            sCurrent = profiles;
+        }
+        Log.i(TAG, "Using scan profile " + profiles.mActive.name);
+        sUiThreadHandler.post(() -> {
+            for (Listener listener : sListeners) {
+                listener.onProfilesChanged(profiles);
+            }
+        });
+    }
+
+    /**
+     * Helper method to read the profiles file
+     *
+     * @param file File holding the profiles
+     * @param previous ScanProfiles to keep if the file has an error
+     * @return ScanProfiles read from the file, the defaults if there is no file, or previous
+     */
+    private static ScanProfiles load(File file, ScanProfiles previous) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            return parse(in);
+        } catch (FileNotFoundException e) {
+            return DEFAULTS;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Unable to read " + file + ". Keeping profile " + previous.mActive.name, e);
+            return previous;
+        }
+    }
+
+    /**
+     * Utility to parse profiles
+     *
+     * @param in BufferedReader holding the profiles, one per line
+     * @return ScanProfiles parsed
+     * @throws IOException if the profiles cannot be read
+     * @throws IllegalArgumentException if a line cannot be understood
+     */
+    static ScanProfiles parse(BufferedReader in) throws IOException {
+        Map<String, Profile> profiles = new LinkedHashMap<>();
+        String activeName = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            line = ((comment >= 0) ? line.substring(0, comment) : line).trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            if (words[0].startsWith("active=")) {
+                activeName = words[0].substring("active=".length());
+                continue;
+            }
+            if (words[0].indexOf('=') >= 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected a profile name before " + words[0]);
+            }
+            profiles.put(words[0], parseProfile(words, lineNumber));
+        }
+        if (profiles.isEmpty()) {
+            profiles.put(DEFAULT_NAME, DEFAULT_PROFILE);
+        }
+        Profile active = (activeName != null) ? profiles.get(activeName) : profiles.values().iterator().next();
+        if (active == null) {
+            throw new IllegalArgumentException("No profile named " + activeName);
+        }
+        return new ScanProfiles(profiles, active);
+    }
+
+    /**
+     * Helper method to parse the settings of one profile, starting from the defaults
+     */
+    private static Profile parseProfile(String[] words, int lineNumber) {
+        Profile defaults = DEFAULT_PROFILE;
+        BarcodeType2[] formats = defaults.formats;
+        Roi roi = defaults.roi;
+        int width = defaults.width;
+        int height = defaults.height;
+        boolean zoom = defaults.zoom;
+        long dedupMillis = defaults.dedupMillis;
+        float votes = defaults.votes;
+        int window = defaults.window;
+        for (int i = 1; i < words.length; i++) {
+            int equals = words[i].indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": expected key=value, not " + words[i]);
+            }
+            String key = words[i].substring(0, equals);
+            String value = words[i].substring(equals + 1);
+            try {
+                switch (key) {
+                    case "formats":
+                        String[] names = value.split(",");
+                        formats = new BarcodeType2[names.length];
+                        for (int j = 0; j < names.length; j++) {
+                            formats[j] = BarcodeType2.valueOf(names[j].toUpperCase());
+                        }
+                        break;
+                    case "roi":
+                        roi = Roi.valueOf(value.toUpperCase());
+                        break;
+                    case "resolution":
+                        int x = value.indexOf('x');
+                        width = Integer.parseInt(value.substring(0, x));
+                        height = Integer.parseInt(value.substring(x + 1));
+                        break;
+                    case "zoom":
+                        if (!value.equals("on") && !value.equals("off")) {
+                            throw new IllegalArgumentException(value);
+                        }
+                        zoom = value.equals("on");
+                        break;
+                    case "dedup":
+                        dedupMillis = Long.parseLong(value);
+                        break;
+                    case "votes":
+                        votes = Float.parseFloat(value);
+                        break;
+                    case "window":
+                        window = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown setting");
+                }
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // NumberFormatException is an IllegalArgumentException too
+                throw new IllegalArgumentException("Line " + lineNumber + ": bad setting " + words[i], e);
+            }
+        }
+        if (formats.length == 0 || width <= 0 || height <= 0 || dedupMillis < 0 || votes <= 0 || window < 1) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": settings out of range");
+        }
+        return new Profile(words[0], formats, roi, width, height, zoom, dedupMillis, votes, window);
+    }
+}
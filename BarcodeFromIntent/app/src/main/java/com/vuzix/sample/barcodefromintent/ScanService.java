@@ -0,0 +1,451 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vuzix.sdk.barcode.BarcodeType2;
+import com.vuzix.sdk.barcode.ScanResult2;
+import com.vuzix.sdk.barcode.Scanner2;
+import com.vuzix.sdk.barcode.Scanner2Factory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A bound service that scans barcodes while keeping the camera open between requests.
+ *
+ * Launching the built-in scanner activity for every barcode pays for an activity transition and
+ * for opening and closing the camera each time. This service opens the camera for the first request
+ * and keeps it open until no request has been made for CAMERA_IDLE_TIMEOUT_MS, so a series of
+ * scans only opens the camera once.
+ *
+ * Each camera has its own worker thread and scanner, so a request can also race the cameras against
+ * each other with startRaceScan().
+ *
+ * While the head moves fast, frames are blurred and rarely scan, so MotionGate limits scanning to one
+ * frame every MOVING_SCAN_INTERVAL_MS. Full rate resumes as soon as the head is still.
+ *
+ * A frame that looks the same as the last one that failed to scan is skipped, since it would only
+ * fail again. A FrameSignature of each frame is compared with that of the failed frame, and a frame
+ * is still scanned every FORCED_RESCAN_MS in case the difference is too small to see.
+ *
+ * With ADAPTIVE_FORMATS, AdaptiveFormats narrows the formats each frame looks for to those actually
+ * being read, and the scanner is reconfigured with setFormats() when the choice changes. Only frames
+ * scanned for every requested format are remembered as failed.
+ *
+ * This is a local stand-in for a scanning service provided by the system. It runs in the app's own
+ * process and scans the frames itself with Scanner2.
+ */
+public class ScanService extends Service {
+    private final static String TAG = "barcodeSample";
+    private final static long CAMERA_IDLE_TIMEOUT_MS = 30000;
+    private final static int MAX_CAMERAS = 2;
+    private final static long MOVING_SCAN_INTERVAL_MS = 500;
+    private final static long FORCED_RESCAN_MS = 1000;
+    // A frame counts as unchanged while no block's average luminance differs by this much. Well above
+    // sensor noise, which averages out over the pixels of a block
+    private final static int UNCHANGED_THRESHOLD = 8;
+    // Look only for the formats that are being read in most frames, rather than all requested formats
+    private final static boolean ADAPTIVE_FORMATS = true;
+
+    private final IBinder binder = new LocalBinder();
+    private Handler mUiThreadHandler;
+    private ScanWorker[] mWorkers;
+    private CameraRaceStats mRaceStats;
+    private MotionGate mMotionGate;
+    private Request mRequest;  // Only accessed on the UI thread
+
+    /**
+     * Define the interface receiving the results of a scan request. Methods are called on the UI thread
+     */
+    public interface Callback {
+        /**
+         * Called for every frame in which barcodes are found, until the request is stopped
+         *
+         * @param results array of ScanResult2 found in the frame
+         * @param decodeMillis float time the scanner spent on the frame, not counting the wait for it
+         */
+        void onScanResult(ScanResult2[] results, float decodeMillis);
+
+        /**
+         * Called if the camera cannot be used. The request is stopped
+         */
+        void onScanError();
+    }
+
+    /**
+     * The interface returned to clients binding to this service
+     */
+    public class LocalBinder extends Binder {
+        public ScanService getService() {
+            return ScanService.this;
+        }
+    }
+
+    /**
+     * Creates a worker for each camera. The cameras are not opened until a request needs them
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mUiThreadHandler = new Handler(Looper.getMainLooper());
+        mRaceStats = new CameraRaceStats(this);
+        mMotionGate = new MotionGate(this);
+        String[] cameraIds;
+        try {
+            CameraManager cameraManager = (CameraManager) getSystemService(Context.CAMERA_SERVICE);
+            cameraIds = cameraManager.getCameraIdList();
+        } catch (CameraAccessException e) {
+            Log.e(TAG, "Unable to list cameras", e);
+            cameraIds = new String[0];
+        }
+        mWorkers = new ScanWorker[Math.min(cameraIds.length, MAX_CAMERAS)];
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new ScanWorker(i, cameraIds[i]);
+        }
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    /**
+     * Closes the cameras and stops the worker threads
+     */
+    @Override
+    public void onDestroy() {
+        mRequest = null;
+        mMotionGate.stop();
+        for (ScanWorker worker : mWorkers) {
+            worker.shutdown();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Starts scanning with one camera. Results are delivered to the callback until stopScan() is
+     * called or another request replaces this one.
+     *
+     * @param barcodeTypes array of BarcodeType2 names to look for
+     * @param cameraId int index of the camera to use. Out of range values use the nearest camera. With
+     *                 no camera at all, the callback's onScanError() is called
+     * @param callback Callback to receive the results
+     */
+    public void startScan(String[] barcodeTypes, int cameraId, Callback callback) {
+        // With no camera at all, the empty array makes startRequest() report the error
+        int[] cameras = (mWorkers.length == 0) ? new int[0] : new int[]{Math.max(0, Math.min(cameraId, mWorkers.length - 1))};
+        startRequest(barcodeTypes, cameras, null, callback);
+    }
+
+    /**
+     * Starts scanning with every camera at once. The first camera to read a barcode wins the race,
+     * and the others stop scanning. Results are then delivered from the winner only, until stopScan()
+     * is called or another request replaces this one.
+     *
+     * The winner of each race is remembered for the given context. Once one camera usually wins, most
+     * requests in that context use it alone.
+     *
+     * @param barcodeTypes array of BarcodeType2 names to look for
+     * @param raceContext String naming the situation, such as the barcode types requested
+     * @param callback Callback to receive the results
+     */
+    public void startRaceScan(String[] barcodeTypes, String raceContext, Callback callback) {
+        int preferred = mRaceStats.chooseCamera(raceContext, mWorkers.length);
+        int[] cameras = (preferred >= 0) ? new int[]{preferred} : mRaceStats.rankCameras(raceContext, mWorkers.length);
+        startRequest(barcodeTypes, cameras, raceContext, callback);
+    }
+
+    /**
+     * Stops delivering results. The cameras stay open for a while in case another request follows
+     */
+    public void stopScan() {
+        if (mRequest != null) {
+            mRequest.cancel();
+            mRequest = null;
+        }
+        mMotionGate.stop();
+    }
+
+    /**
+     * Utility to replace the current request with one using the given cameras
+     */
+    private void startRequest(String[] barcodeTypes, int[] cameras, String raceContext, Callback callback) {
+        BarcodeType2[] formats = new BarcodeType2[barcodeTypes.length];
+        for (int i = 0; i < barcodeTypes.length; i++) {
+            formats[i] = BarcodeType2.valueOf(barcodeTypes[i]);
+        }
+        stopScan();
+        if (cameras.length == 0) {
+            mUiThreadHandler.post(callback::onScanError);
+            return;
+        }
+        ScanWorker[] racers = new ScanWorker[cameras.length];
+        for (int i = 0; i < cameras.length; i++) {
+            racers[i] = mWorkers[cameras[i]];
+        }
+        mRequest = new Request(racers, raceContext, callback);
+        mMotionGate.start();
+        for (ScanWorker worker : racers) {
+            worker.start(mRequest, formats);
+        }
+    }
+
+    /**
+     * A scan request, served by one or more workers racing each other
+     */
+    private class Request {
+        final ScanWorker[] racers;
+        final String raceContext;
+        final Callback callback;
+        final long startTime = SystemClock.elapsedRealtime();
+        final AtomicReference<ScanWorker> winner = new AtomicReference<>();
+        final AtomicInteger running;
+
+        Request(ScanWorker[] racers, String raceContext, Callback callback) {
+            this.racers = racers;
+            this.raceContext = raceContext;
+            this.callback = callback;
+            this.running = new AtomicInteger(racers.length);
+        }
+
+        /**
+         * Called on a worker thread when it finds barcodes. The first worker to do so wins, and
+         * the others are cancelled
+         */
+        void onResult(ScanWorker worker, ScanResult2[] results, float decodeMillis) {
+            if (winner.compareAndSet(null, worker)) {
+                Log.d(TAG, "Camera " + worker.cameraIndex + " read first, after "
+                        + (SystemClock.elapsedRealtime() - startTime) + "ms with " + racers.length + " cameras");
+                if (racers.length > 1) {
+                    for (ScanWorker racer : racers) {
+                        if (racer != worker) {
+                            racer.stop(this);
+                        }
+                    }
+                    if (raceContext != null) {
+                        mRaceStats.recordWin(raceContext, worker.cameraIndex);
+                    }
+                }
+            } else if (winner.get() != worker) {
+                return;  // Lost the race while scanning
+            }
+            mUiThreadHandler.post(() -> {
+                if (mRequest == this) {
+                    callback.onScanResult(results, decodeMillis);
+                }
+            });
+        }
+
+        /**
+         * Called on a worker thread when its camera fails. The request only fails once it has no
+         * camera left that could still deliver results
+         */
+        void onError(ScanWorker worker) {
+            if (running.decrementAndGet() > 0 && winner.get() != worker) {
+                return;
+            }
+            mUiThreadHandler.post(() -> {
+                if (mRequest == this) {
+                    stopScan();
+                    callback.onScanError();
+                }
+            });
+        }
+
+        void cancel() {
+            for (ScanWorker racer : racers) {
+                racer.stop(this);
+            }
+        }
+    }
+
+    /**
+     * One camera with its own thread and scanner, so several cameras can be scanned at once
+     */
+    private class ScanWorker implements FrameSource.Listener {
+        final int cameraIndex;
+        private final HandlerThread mThread;
+        private final Handler mHandler;
+        private final FrameSource mFrameSource;
+        private final AtomicReference<Request> mActiveRequest = new AtomicReference<>();
+        private Scanner2 mScanner;
+        private long mLastScanTime;
+        private int mSkippedFrames;
+        private int mUnchangedFrames;
+        private final FrameSignature mFrameSignature = new FrameSignature();
+        private final FrameSignature mFailedSignature = new FrameSignature();
+        private final AdaptiveFormats mAdaptiveFormats = new AdaptiveFormats();
+        private BarcodeType2[] mScannerFormats;   // The formats last given to mScanner
+
+        private final Runnable mCloseIdleCamera = new Runnable() {
+            @Override
+            public void run() {
+                mFrameSource.close();
+            }
+        };
+
+        ScanWorker(int cameraIndex, String cameraId) {
+            this.cameraIndex = cameraIndex;
+            mThread = new HandlerThread("Scan Service " + cameraIndex);
+            mThread.start();
+            mHandler = new Handler(mThread.getLooper());
+            mFrameSource = new CameraFrameSource(ScanService.this, cameraId, mHandler);
+            try {
+                mScanner = Scanner2Factory.getScanner(ScanService.this);
+            } catch (Exception ex) {
+                Log.e(TAG, "Unable to create scanner", ex);
+            }
+        }
+
+        /**
+         * Starts scanning for the request, opening the camera if it is not already warm
+         */
+        void start(Request request, BarcodeType2[] formats) {
+            mActiveRequest.set(request);
+            mHandler.post(() -> {
+                mHandler.removeCallbacks(mCloseIdleCamera);
+                if (mScanner == null) {
+                    onFrameSourceError();
+                    return;
+                }
+                if (ADAPTIVE_FORMATS) {
+                    mAdaptiveFormats.setRequested(formats);   // Given to the scanner frame by frame
+                } else {
+                    mScanner.setFormats(formats);
+                }
+                mFailedSignature.clear();
+                mFrameSource.setListener(this);
+                mFrameSource.open();
+            });
+        }
+
+        /**
+         * Stops scanning for the request, if it is still the active one. May be called from any thread
+         */
+        void stop(Request request) {
+            if (!mActiveRequest.compareAndSet(request, null)) {
+                return;
+            }
+            mHandler.post(() -> {
+                if (mActiveRequest.get() == null) {
+                    mFrameSource.setListener(null);
+                    mHandler.removeCallbacks(mCloseIdleCamera);
+                    mHandler.postDelayed(mCloseIdleCamera, CAMERA_IDLE_TIMEOUT_MS);
+                }
+            });
+        }
+
+        void shutdown() {
+            mActiveRequest.set(null);
+            mHandler.post(() -> {
+                mFrameSource.setListener(null);
+                mFrameSource.close();
+            });
+            mThread.quitSafely();
+        }
+
+        @Override
+        public void onFrame(byte[] data, int width, int height) {
+            Request request = mActiveRequest.get();
+            if (request == null) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            boolean moving = mMotionGate.isMoving();
+            if (moving && now - mLastScanTime < MOVING_SCAN_INTERVAL_MS) {
+                mSkippedFrames++;
+                return;
+            }
+            if (!moving && mSkippedFrames > 0) {
+                Log.d(TAG, "Camera " + cameraIndex + " skipped " + mSkippedFrames + " frames while moving");
+                mSkippedFrames = 0;
+            }
+            mFrameSignature.compute(data, width, height);
+            if (mFrameSignature.maxDifference(mFailedSignature) < UNCHANGED_THRESHOLD) {
+                if (now - mLastScanTime < FORCED_RESCAN_MS) {
+                    mUnchangedFrames++;
+                    return;
+                }
+            } else if (mUnchangedFrames > 0) {
+                Log.d(TAG, "Camera " + cameraIndex + " skipped " + mUnchangedFrames + " unchanged frames");
+                mUnchangedFrames = 0;
+            }
+            mLastScanTime = now;
+            boolean allFormats = true;
+            if (ADAPTIVE_FORMATS) {
+                BarcodeType2[] formats = mAdaptiveFormats.next();
+                if (formats != mScannerFormats) {
+                    mScanner.setFormats(formats);   // Reconfigures the existing scanner
+                    mScannerFormats = formats;
+                }
+                allFormats = mAdaptiveFormats.isAll(formats);
+            }
+            long scanStart = System.nanoTime();
+            ScanResult2[] results = mScanner.scan(data, width, height, new Rect(0, 0, width, height));
+            float decodeMillis = (System.nanoTime() - scanStart) / 1e6f;
+            if (ADAPTIVE_FORMATS) {
+                mAdaptiveFormats.record(results);
+            }
+            if (results != null && results.length > 0) {
+                mFailedSignature.clear();
+                request.onResult(this, results, decodeMillis);
+            } else if (allFormats) {
+                // A frame scanned for fewer formats may hold a barcode of another format, so it is not
+                // skipped as unchanged
+                mFailedSignature.copyFrom(mFrameSignature);
+            }
+        }
+
+        @Override
+        public void onFrameSourceError() {
+            Request request = mActiveRequest.getAndSet(null);
+            if (request != null) {
+                request.onError(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.net.URL;
+import java.util.Random;
+
+/**
+ * Uploads the scans in the ScanJournal to an HTTP endpoint, in order, whenever there is a network.
+ *
+ * The journal is the queue. Scans stay in its segments on disk until uploaded, and only the sequence
+ * number of the last scan uploaded is kept, so nothing is lost while offline. If the glasses stay
+ * offline long enough for the journal to delete its oldest segment, those scans are skipped.
+ *
+ * The batches are sent by ScanBatchSender, which describes their format and the retries. Uploads
+ * run on a background priority thread, and wait while the scanner is busy, so they do not compete
+ * with decoding.
+ */
+final class ScanUploader {
+    private final static String PREFERENCES = "scan_upload";
+    private final static String KEY_LAST_UPLOADED = "last_uploaded_sequence";
+    private final static long SCANNER_IDLE_DELAY_MS = 1000;
+
+    private static ScanUploader sInstance;
+
+    private final SharedPreferences mPreferences;
+    private final Handler mHandler;
+    private final Runnable mUploadRunnable = this::uploadNextBatch;
+    private volatile boolean mScannerBusy;
+
+    // Only accessed on the upload thread
+    private ScanBatchSender mSender;
+    private boolean mWaitingForIdle;
+
+    private ScanUploader(Context context, URL endpoint) {
+        mPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        HandlerThread thread = new HandlerThread("Scan Upload", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        mHandler.post(() -> {
+            mSender = new ScanBatchSender(ScanJournal.getInstance(context), endpoint,
+                    mPreferences.getLong(KEY_LAST_UPLOADED, -1), new Random());
+            uploadNextBatch();
+        });
+
+        ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    // Back online. Don't wait out the backoff
+                    mHandler.post(() -> {
+                        mSender.resetBackoff();
+                        schedule(0);
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Starts uploading, unless already started. Later calls return the running uploader, whatever
+     * their endpoint
+     *
+     * @param context Context used to find the journal
+     * @param endpoint URL to POST the scans to
+     * @return The uploader shared by the whole process
+     */
+    static synchronized ScanUploader start(Context context, URL endpoint) {
+        if (sInstance == null) {
+            sInstance = new ScanUploader(context.getApplicationContext(), endpoint);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Tells the uploader whether a scan is in progress. Uploads wait until it is not
+     *
+     * @param busy True while scanning
+     */
+    void setScannerBusy(boolean busy) {
+        mScannerBusy = busy;
+        if (!busy) {
+            mHandler.post(() -> {
+                // Give the result a moment to reach the journal, then send it. While backing off,
+                // the retry already scheduled stands
+                if (mWaitingForIdle || !mSender.isBackingOff()) {
+                    mWaitingForIdle = false;
+                    schedule(SCANNER_IDLE_DELAY_MS);
+                }
+            });
+        }
+    }
+
+    private void schedule(long delay) {
+        mHandler.removeCallbacks(mUploadRunnable);
+        mHandler.postDelayed(mUploadRunnable, delay);
+    }
+
+    /**
+     * Uploads the next batch of scans, then schedules the next attempt
+     */
+    private void uploadNextBatch() {
+        if (mScannerBusy) {
+            mWaitingForIdle = true;
+            schedule(ScanBatchSender.IDLE_POLL_MS);   // Also scheduled as soon as the scanner is idle
+            return;
+        }
+        long lastUploaded = mSender.getLastUploaded();
+        long delay = mSender.sendNextBatch();
+        if (mSender.getLastUploaded() != lastUploaded) {
+            mPreferences.edit().putLong(KEY_LAST_UPLOADED, mSender.getLastUploaded()).apply();
+        }
+        schedule(delay);
+    }
+}
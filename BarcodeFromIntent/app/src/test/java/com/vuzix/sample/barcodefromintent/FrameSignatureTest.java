@@ -0,0 +1,114 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for FrameSignature. These run on the JVM
+ */
+public class FrameSignatureTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    // As used by ScanService
+    private static final int UNCHANGED_THRESHOLD = 8;
+
+    private final FrameSignature mFirst = new FrameSignature();
+    private final FrameSignature mSecond = new FrameSignature();
+
+    @Test
+    public void sameFrameIsUnchanged() {
+        byte[] frame = noisyFrame(new Random(37), 120, 0);
+        mFirst.compute(frame, WIDTH, HEIGHT);
+        mSecond.compute(frame, WIDTH, HEIGHT);
+        assertEquals(0, mFirst.maxDifference(mSecond));
+    }
+
+    @Test
+    public void sensorNoiseIsUnchanged() {
+        Random random = new Random(37);
+        mFirst.compute(noisyFrame(random, 120, 6), WIDTH, HEIGHT);
+        mSecond.compute(noisyFrame(random, 120, 6), WIDTH, HEIGHT);
+        assertTrue(mFirst.maxDifference(mSecond) < UNCHANGED_THRESHOLD);
+    }
+
+    /**
+     * A barcode covering two 80 x 80 blocks of a still scene must count as a change, however little
+     * of the frame it covers
+     */
+    @Test
+    public void smallLocalChangeIsChanged() {
+        Random random = new Random(37);
+        byte[] frame = noisyFrame(random, 120, 6);
+        mFirst.compute(frame, WIDTH, HEIGHT);
+        for (int y = 80; y < 160; y++) {
+            for (int x = 160; x < 320; x++) {
+                frame[y * WIDTH + x] = (byte) ((frame[y * WIDTH + x] & 0xFF) + 80);
+            }
+        }
+        mSecond.compute(frame, WIDTH, HEIGHT);
+        int difference = mFirst.maxDifference(mSecond);
+        assertTrue("Difference " + difference, difference >= UNCHANGED_THRESHOLD);
+        assertEquals(80, difference, 2);
+    }
+
+    @Test
+    public void emptySignatureMatchesNothing() {
+        byte[] frame = noisyFrame(new Random(37), 120, 0);
+        mFirst.compute(frame, WIDTH, HEIGHT);
+        mSecond.compute(frame, WIDTH, HEIGHT);
+        mSecond.clear();
+        assertEquals(Integer.MAX_VALUE, mFirst.maxDifference(mSecond));
+        mSecond.compute(new byte[8], 4, 2);   // Too small to divide into blocks
+        assertEquals(Integer.MAX_VALUE, mFirst.maxDifference(mSecond));
+        mSecond.copyFrom(mFirst);
+        assertEquals(0, mFirst.maxDifference(mSecond));
+    }
+
+    private static byte[] noisyFrame(Random random, int level, int noise) {
+        byte[] frame = new byte[WIDTH * HEIGHT];
+        Arrays.fill(frame, (byte) level);
+        if (noise > 0) {
+            for (int i = 0; i < frame.length; i++) {
+                frame[i] = (byte) Math.max(0, Math.min(255, level + (int) Math.round(random.nextGaussian() * noise)));
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Tests for Gs1Parser, including a fuzz test over random and mutated payloads. These run on the JVM
+ */
+public class Gs1ParserTest {
+    private static final String GS = String.valueOf(Gs1Parser.GS);
+    // Characters the fuzz test builds payloads from. Mostly digits, so many payloads parse
+    private static final String FUZZ_CHARS = "0123456789012345678901234567890123456789ABCXYZabc()!%&*+-./:;<=>?_\"'," + GS + "]\u00ff ";
+    private static final String[] SAMPLES = {
+            "]C10109501101530003172605311010ABC123",
+            GS + "0109501101530003" + GS + "3103001250" + GS + "10AB(C123",
+            GS + "10AB(C123" + GS + "3103001250",
+            "]d201095011015300031715000010LOT-7" + GS + "21(SERIAL)" + GS + "3922123456",
+            "]Q3400PO/12" + GS + "00123456789012345675" + "3932978001299",
+    };
+
+    private final Gs1Parser mParser = new Gs1Parser(2026);
+    private final Gs1Parser.Result mResult = new Gs1Parser.Result();
+
+    @Test
+    public void parsesElements() {
+        assertTrue(mParser.parse("]C10109501101530003172605311010ABC123", mResult));
+        assertEquals(3, mResult.getCount());
+        assertEquals(1, mResult.getAi(0));
+        assertEquals(9501101530003L, mResult.getLong(0));
+        assertEquals(17, mResult.getAi(1));
+        assertEquals(20260531, mResult.getDate(1));
+        assertEquals(10, mResult.getAi(2));
+        assertTrue(mResult.valueEquals(2, "10ABC123"));
+        assertEquals(-1, mResult.indexOf(21));
+    }
+
+    @Test
+    public void readsDecimalsAndDates() {
+        assertTrue(mParser.parse(GS + "3103001250" + GS + "3932978001299" + GS + "17260200", mResult));
+        assertEquals(1.25, mResult.getDecimal(0), 1e-9);
+        assertEquals(12.99, mResult.getDecimal(1), 1e-9);
+        assertEquals(20260228, mResult.getDate(2));
+        assertTrue(mParser.parse(GS + "17761231" + "17771231" + "17130231", mResult));
+        assertEquals(20761231, mResult.getDate(0));       // Up to 50 years ahead
+        assertEquals(19771231, mResult.getDate(1));       // Otherwise in the past
+        assertEquals(-1, mResult.getDate(2));
+    }
+
+    @Test
+    public void parsesBytes() {
+        byte[] data = ("xx]C1" + "0109501101530003" + "21ABC").getBytes(StandardCharsets.ISO_8859_1);
+        assertTrue(mParser.parse(data, 2, data.length - 2, mResult));
+        assertEquals(2, mResult.getCount());
+        assertTrue(mResult.valueEquals(1, "ABC"));
+    }
+
+    @Test
+    public void rejectsInvalidPayloads() {
+        assertFalse(mParser.parse("", mResult));
+        assertFalse(mParser.parse(GS, mResult));
+        assertFalse(mParser.parse(GS + "01123", mResult));                  // Too short for a GTIN
+        assertFalse(mParser.parse(GS + "0109501101530003" + GS + "10", mResult));   // Empty value
+        assertFalse(mParser.parse(GS + "01095011015300AB", mResult));       // Letters in a numeric AI
+        assertFalse(mParser.parse(GS + "10ABC\u00e9", mResult));             // Not in character set 82
+        assertFalse(mParser.parse(GS + "10" + repeat('A', 91), mResult));   // Value too long
+        assertFalse(mParser.parse("(01)09501101530003", mResult));         // Human readable form is display only
+    }
+
+    @Test
+    public void onlyMarkedPayloadsAreGs1() {
+        assertFalse(Gs1Parser.isMarked("4006381333931"));
+        assertFalse(Gs1Parser.isMarked("21ABC"));
+        assertFalse(Gs1Parser.isMarked("]E04006381333931"));
+        assertFalse(Gs1Parser.isMarked(""));
+        assertTrue(Gs1Parser.isMarked(GS + "21ABC"));
+        assertTrue(Gs1Parser.isMarked("]C10109501101530003"));
+        assertTrue(Gs1Parser.isMarked("]d20109501101530003"));
+        assertTrue(Gs1Parser.isMarked("]Q30109501101530003"));
+    }
+
+    @Test
+    public void humanReadableKeepsParenthesesInValues() {
+        assertTrue(mParser.parse(GS + "10AB(C123" + GS + "3103001250", mResult));
+        StringBuilder text = new StringBuilder();
+        mResult.appendHumanReadable(text);
+        assertEquals("(10)AB(C123(3103)001250", text.toString());
+    }
+
+    @Test
+    public void samplesRoundTrip() {
+        for (String sample : SAMPLES) {
+            assertTrue(sample, mParser.parse(sample, mResult));
+            assertRoundTrip(sample);
+        }
+    }
+
+    /**
+     * Random payloads, and valid ones with a character changed, added or removed, must never throw.
+     * Every payload that parses must give offsets inside the payload, and must round-trip through
+     * its element string
+     */
+    @Test
+    public void fuzz() {
+        Random random = new Random(48);
+        int accepted = 0;
+        for (int i = 0; i < 200000; i++) {
+            String payload = (i % 2 == 0) ? randomPayload(random) : mutate(SAMPLES[random.nextInt(SAMPLES.length)], random);
+            if (!mParser.parse(payload, mResult)) {
+                continue;
+            }
+            accepted++;
+            int total = 0;
+            for (int element = 0; element < mResult.getCount(); element++) {
+                int length = mResult.getLength(element);
+                assertTrue(payload, length > 0 && length <= payload.length());
+                for (int offset = 0; offset < length; offset++) {
+                    assertTrue(payload, payload.indexOf(mResult.charAt(element, offset)) >= 0);
+                }
+                total += length;
+                mResult.getLong(element);
+                mResult.getDecimal(element);
+                mResult.getDate(element);
+            }
+            assertTrue(payload, total <= payload.length());
+            assertRoundTrip(payload);
+        }
+        assertTrue("Only " + accepted + " payloads parsed", accepted > 1000);
+    }
+
+    /**
+     * Helper method to check that the element string of the current result parses to the same elements
+     */
+    private void assertRoundTrip(String payload) {
+        int count = mResult.getCount();
+        int[] ais = new int[count];
+        String[] values = new String[count];
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            ais[i] = mResult.getAi(i);
+            value.setLength(0);
+            mResult.appendValue(i, value);
+            values[i] = value.toString();
+        }
+        StringBuilder elements = new StringBuilder(GS);
+        mResult.appendElementString(elements);
+        String encoded = elements.toString();
+        assertTrue(payload + " encoded as " + encoded, mParser.parse(encoded, mResult));
+        assertEquals(payload, count, mResult.getCount());
+        for (int i = 0; i < count; i++) {
+            assertEquals(payload, ais[i], mResult.getAi(i));
+            assertTrue(payload, mResult.valueEquals(i, values[i]));
+        }
+    }
+
+    private static String randomPayload(Random random) {
+        StringBuilder payload = new StringBuilder();
+        if (random.nextBoolean()) {
+            payload.append(random.nextBoolean() ? "]C1" : GS);
+        }
+        int length = random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+            payload.append(FUZZ_CHARS.charAt(random.nextInt(FUZZ_CHARS.length())));
+        }
+        return payload.toString();
+    }
+
+    private static String mutate(String sample, Random random) {
+        StringBuilder payload = new StringBuilder(sample);
+        int edits = 1 + random.nextInt(3);
+        for (int i = 0; i < edits && payload.length() > 0; i++) {
+            int position = random.nextInt(payload.length());
+            char c = FUZZ_CHARS.charAt(random.nextInt(FUZZ_CHARS.length()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    payload.setCharAt(position, c);
+                    break;
+                case 1:
+                    payload.insert(position, c);
+                    break;
+                default:
+                    payload.deleteCharAt(position);
+                    break;
+            }
+        }
+        return payload.toString();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(c);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,326 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for ScanBatchSender, the part of ScanUploader that talks to the server, against a stand-in
+ * server on the loopback address. These run on the JVM
+ */
+public class ScanBatchSenderTest {
+    private static final long WAIT_MS = 10000;
+
+    private HttpServer mServer;
+    private URL mEndpoint;
+    private File mDirectory;
+    // Response codes for the next requests. 200 once they run out
+    private final ConcurrentLinkedQueue<Integer> mResponses = new ConcurrentLinkedQueue<>();
+    // Sequences of each request received, and of those accepted
+    private final List<List<Long>> mRequests = new ArrayList<>();
+    private final List<Long> mAccepted = new ArrayList<>();
+    // The first request the server found wrong. Thrown on the test thread in tearDown()
+    private final AtomicReference<Throwable> mServerFailure = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("scan_journal").toFile();
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/scans", this::handle);
+        mServer.start();
+        mEndpoint = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + "/scans");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+        Throwable failure = mServerFailure.get();
+        if (failure != null) {
+            throw new AssertionError("Server received a bad request", failure);
+        }
+    }
+
+    @Test
+    public void sendsGzippedBatchesInOrder() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        appendAndWait(journal, 0, 450);
+        ScanBatchSender sender = new ScanBatchSender(journal, mEndpoint, -1, new Random(45));
+
+        assertEquals(0, sender.sendNextBatch());
+        assertEquals(0, sender.sendNextBatch());
+        assertEquals(0, sender.sendNextBatch());
+        assertEquals(ScanBatchSender.IDLE_POLL_MS, sender.sendNextBatch());
+        assertEquals(3, mRequests.size());
+        assertEquals(ScanBatchSender.BATCH_RECORDS, mRequests.get(0).size());
+        assertEquals(ScanBatchSender.BATCH_RECORDS, mRequests.get(1).size());
+        assertEquals(50, mRequests.get(2).size());
+        assertSequences(0, 449, mAccepted);
+        assertEquals(449, sender.getLastUploaded());
+
+        // Later scans continue where the last batch ended
+        appendAndWait(journal, 450, 10);
+        assertEquals(0, sender.sendNextBatch());
+        assertSequences(0, 459, mAccepted);
+    }
+
+    @Test
+    public void resumesFromTheLastUploaded() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        appendAndWait(journal, 0, 100);
+        ScanBatchSender sender = new ScanBatchSender(journal, mEndpoint, 59, new Random(45));
+        assertEquals(0, sender.sendNextBatch());
+        assertSequences(60, 99, mAccepted);
+    }
+
+    @Test
+    public void deliversInOrderAfterFailures() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        appendAndWait(journal, 0, 450);
+        ScanBatchSender sender = new ScanBatchSender(journal, mEndpoint, -1, new Random(45));
+        mResponses.add(503);
+        mResponses.add(500);
+        mResponses.add(429);
+        mResponses.add(200);
+        mResponses.add(408);
+        mResponses.add(200);
+        mResponses.add(502);
+
+        int failures = 0;
+        for (int i = 0; i < 20 && sender.sendNextBatch() != ScanBatchSender.IDLE_POLL_MS; i++) {
+            if (sender.isBackingOff()) {
+                failures++;
+            }
+        }
+        assertEquals(5, failures);
+        assertEquals(8, mRequests.size());
+        // Each failed batch is sent again, unchanged, before anything later
+        assertEquals(mRequests.get(0), mRequests.get(3));
+        assertEquals(mRequests.get(4), mRequests.get(5));
+        assertEquals(mRequests.get(6), mRequests.get(7));
+        assertSequences(0, 449, mAccepted);
+        assertFalse(sender.isBackingOff());
+    }
+
+    @Test
+    public void backsOffExponentially() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        appendAndWait(journal, 0, 5);
+        ScanBatchSender sender = new ScanBatchSender(journal, mEndpoint, -1, new Random(45));
+        long backoff = ScanBatchSender.MIN_BACKOFF_MS;
+        for (int i = 0; i < 12; i++) {
+            mResponses.add(503);
+            long delay = sender.sendNextBatch();
+            assertTrue("Retry " + i + " after " + delay + "ms", delay >= backoff / 2 && delay <= backoff);
+            backoff = Math.min(backoff * 2, ScanBatchSender.MAX_BACKOFF_MS);
+        }
+        assertEquals(ScanBatchSender.MAX_BACKOFF_MS, backoff);
+        assertTrue(sender.isBackingOff());
+        assertEquals(-1, sender.getLastUploaded());
+
+        // Success starts the backoff over
+        assertEquals(0, sender.sendNextBatch());
+        assertFalse(sender.isBackingOff());
+        appendAndWait(journal, 5, 1);
+        mResponses.add(503);
+        mResponses.add(503);
+        assertTrue(sender.sendNextBatch() <= ScanBatchSender.MIN_BACKOFF_MS);
+        assertTrue(sender.sendNextBatch() > ScanBatchSender.MIN_BACKOFF_MS / 2);
+
+        // As does the network coming back
+        sender.resetBackoff();
+        mResponses.add(503);
+        assertTrue(sender.sendNextBatch() <= ScanBatchSender.MIN_BACKOFF_MS);
+        assertSequences(0, 4, mAccepted);
+    }
+
+    @Test
+    public void backsOffWhenOffline() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        appendAndWait(journal, 0, 5);
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = socket.getLocalPort();
+        }
+        ScanBatchSender sender = new ScanBatchSender(journal, new URL("http://127.0.0.1:" + closedPort + "/scans"),
+                -1, new Random(45));
+        long delay = sender.sendNextBatch();
+        assertTrue(delay >= ScanBatchSender.MIN_BACKOFF_MS / 2 && delay <= ScanBatchSender.MIN_BACKOFF_MS);
+        assertTrue(sender.isBackingOff());
+        assertEquals(-1, sender.getLastUploaded());
+    }
+
+    @Test
+    public void skipsABatchTheServerRejects() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        appendAndWait(journal, 0, 250);
+        ScanBatchSender sender = new ScanBatchSender(journal, mEndpoint, -1, new Random(45));
+        mResponses.add(400);
+        assertEquals(0, sender.sendNextBatch());
+        assertEquals(0, sender.sendNextBatch());
+        assertEquals(249, sender.getLastUploaded());
+        assertSequences(200, 249, mAccepted);
+    }
+
+    /**
+     * While offline, the journal keeps at most its segment cap on disk. Scans deleted before they
+     * could be sent are skipped, and the rest still arrive in order
+     */
+    @Test
+    public void skipsScansDeletedByTheDiskCap() throws Exception {
+        int maxSegments = 3;
+        long segmentBytes = 1024;
+        ScanJournal journal = new ScanJournal(mDirectory, segmentBytes, maxSegments);
+        ScanBatchSender sender = new ScanBatchSender(journal, mEndpoint, -1, new Random(45));
+        appendAndWait(journal, 0, 10);
+        mResponses.add(503);
+        assertTrue(sender.sendNextBatch() > 0);   // Offline from here on
+
+        for (int i = 10; i < 400; i += 10) {
+            appendAndWait(journal, i, 10);   // One small write at a time, so segments rotate
+        }
+        File[] segments = mDirectory.listFiles();
+        assertTrue(segments.length <= maxSegments);
+        long bytes = 0;
+        for (File segment : segments) {
+            bytes += segment.length();
+        }
+        assertTrue(bytes + " bytes on disk", bytes < maxSegments * segmentBytes * 2);
+
+        while (sender.sendNextBatch() != ScanBatchSender.IDLE_POLL_MS) {
+            assertFalse(sender.isBackingOff());
+        }
+        long first = mAccepted.get(0);
+        assertTrue(first > 0);
+        assertSequences(first, 399, mAccepted);
+    }
+
+    /**
+     * Helper method to add scans to the journal, and wait until they are written
+     */
+    private static void appendAndWait(ScanJournal journal, int first, int count) throws InterruptedException {
+        for (int i = first; i < first + count; i++) {
+            journal.append("SCAN-" + i, "CODE_128", "test", (i % 3 == 0) ? Float.NaN : 12.5f, (i % 2 == 0) ? Float.NaN : 90);
+        }
+        long last = first + count - 1;
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (true) {
+            List<ScanJournal.Record> records = journal.read(last, 1);
+            if (!records.isEmpty() && records.get(0).sequence == last) {
+                return;
+            }
+            assertTrue("Scan " + last + " not written", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void assertSequences(long first, long last, List<Long> sequences) {
+        assertEquals(last - first + 1, sequences.size());
+        for (int i = 0; i < sequences.size(); i++) {
+            assertEquals(first + i, (long) sequences.get(i));
+        }
+    }
+
+    /**
+     * The stand-in server. Reads the gzipped JSON lines and answers with the next scripted response.
+     * A bad request is answered with 500 and its failure kept for tearDown(), since an assertion
+     * failing here, on the server's thread, would not fail the test
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try {
+            assertEquals("POST", exchange.getRequestMethod());
+            assertEquals("gzip", exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(exchange.getRequestBody()), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                JSONObject json = new JSONObject(line);
+                long sequence = json.getLong("sequence");
+                assertEquals("SCAN-" + sequence, json.getString("payload"));
+                assertEquals(sequence % 3 != 0, json.has("decodeMs"));
+                assertEquals(sequence % 2 != 0, json.has("heading"));
+                sequences.add(sequence);
+            }
+        } catch (JSONException | AssertionError e) {
+            mServerFailure.compareAndSet(null, e);
+            sequences.clear();
+        }
+        Integer response = mResponses.poll();
+        int code = sequences.isEmpty() ? 500 : (response != null) ? response : 200;
+        synchronized (this) {
+            mRequests.add(sequences);
+            if (code == 200) {
+                mAccepted.addAll(sequences);
+            }
+        }
+        // A new connection per request, so the client never sends on one the server has closed
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.sendResponseHeaders(code, -1);
+        exchange.close();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+Copyright (c) 2017, Vuzix Corporation
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions
+are met:
+
+*  Redistributions of source code must retain the above copyright
+   notice, this list of conditions and the following disclaimer.
+
+*  Redistributions in binary form must reproduce the above copyright
+   notice, this list of conditions and the following disclaimer in the
+   documentation and/or other materials provided with the distribution.
+
+*  Neither the name of Vuzix Corporation nor the names of
+   its contributors may be used to endorse or promote products derived
+   from this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS;
+OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR
+OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+*/
+
+package com.vuzix.sample.barcodefromintent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Tests for ScanJournal. These run on the JVM
+ */
+public class ScanJournalTest {
+    private static final long WAIT_MS = 10000;
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("scan_journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void readsBackInOrder() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        journal.append("FIRST", "QR_CODE", "test", 5, 180);
+        journal.append("SECOND", null, null, 6, Float.NaN);
+        List<ScanJournal.Record> records = waitForRecords(journal, 2);
+        assertEquals(0, records.get(0).sequence);
+        assertEquals("FIRST", records.get(0).payload);
+        assertEquals("QR_CODE", records.get(0).symbology);
+        assertEquals(180, records.get(0).heading, 0);
+        assertEquals(1, records.get(1).sequence);
+        assertEquals(null, records.get(1).symbology);
+        assertTrue(Float.isNaN(records.get(1).heading));
+        assertTrue(journal.wasScannedThisShift("SECOND"));
+    }
+
+    /**
+     * A payload too long to journal must not take the rest of its group commit with it
+     */
+    @Test
+    public void dropsOnlyAnOversizedScan() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        StringBuilder huge = new StringBuilder();
+        while (huge.length() < 70000) {
+            huge.append("0123456789");
+        }
+        journal.append("BEFORE", "CODE_128", "test", 5, Float.NaN);
+        journal.append(huge.toString(), "QR_CODE", "test", 5, Float.NaN);
+        journal.append("AFTER", "CODE_128", "test", 5, Float.NaN);
+        journal.append("LATER", "CODE_128", "test", 5, Float.NaN);
+        List<ScanJournal.Record> records = waitForRecords(journal, 3);
+        assertEquals(3, records.size());
+        assertEquals("BEFORE", records.get(0).payload);
+        assertEquals("AFTER", records.get(1).payload);
+        assertEquals("LATER", records.get(2).payload);
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i, records.get(i).sequence);
+        }
+    }
+
+    @Test
+    public void continuesTheSequenceWhenReopened() throws Exception {
+        ScanJournal journal = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        journal.append("FIRST", "QR_CODE", "test", 5, Float.NaN);
+        waitForRecords(journal, 1);
+        ScanJournal reopened = new ScanJournal(mDirectory, 1024 * 1024, 32);
+        reopened.append("SECOND", "QR_CODE", "test", 5, Float.NaN);
+        List<ScanJournal.Record> records = waitForRecords(reopened, 2);
+        assertEquals(1, records.get(1).sequence);
+        assertTrue(reopened.wasScannedThisShift("FIRST"));
+    }
+
+    /**
+     * Helper method to wait until the writer thread has written a number of records
+     */
+    private static List<ScanJournal.Record> waitForRecords(ScanJournal journal, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (true) {
+            List<ScanJournal.Record> records = journal.read(0, count + 1);
+            if (records.size() >= count) {
+                return records;
+            }
+            assertTrue("Only " + records.size() + " records written", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}